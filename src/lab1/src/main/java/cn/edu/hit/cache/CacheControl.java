@@ -0,0 +1,127 @@
+package cn.edu.hit.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import cn.edu.hit.core.HttpHeaders;
+
+/**
+ * 解析后的 Cache-Control 指令（RFC 9111 第 5.2 节），请求与响应共用。未出现的数值指令为 -1。
+ *
+ * @param noStore 是否存在 no-store，不允许缓存
+ * @param noCache 是否存在 no-cache，使用缓存前必须向目标服务器验证
+ * @param isPrivate 是否存在 private，共享缓存不允许缓存
+ * @param isPublic 是否存在 public
+ * @param mustRevalidate 是否存在 must-revalidate 或 proxy-revalidate，过期后必须验证才能使用
+ * @param maxAge max-age 的值（秒）
+ * @param sMaxAge s-maxage 的值（秒），共享缓存优先使用
+ * @param staleWhileRevalidate stale-while-revalidate 的值（秒）
+ * @param staleIfError stale-if-error 的值（秒）
+ */
+public record CacheControl(boolean noStore, boolean noCache, boolean isPrivate, boolean isPublic,
+    boolean mustRevalidate, long maxAge, long sMaxAge, long staleWhileRevalidate,
+    long staleIfError) {
+
+    private static final CacheControl EMPTY = new CacheControl(false, false, false, false, false, -1, -1, -1, -1);
+
+    /**
+     * 解析头部集合中的所有 Cache-Control 字段。无法识别的指令被忽略，格式错误的数值按 0 处理（即立即过期）。
+     *
+     * @param headers 请求或响应的头部
+     * @return 解析后的指令
+     */
+    public static CacheControl parse(HttpHeaders headers) {
+        if (!headers.contains("Cache-Control")) {
+            return EMPTY;
+        }
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean isPrivate = false;
+        boolean isPublic = false;
+        boolean mustRevalidate = false;
+        long maxAge = -1;
+        long sMaxAge = -1;
+        long staleWhileRevalidate = -1;
+        long staleIfError = -1;
+        for (String field : headers.getAll("Cache-Control")) {
+            for (String directive : split(field)) {
+                int equals = directive.indexOf('=');
+                String name = (equals == -1 ? directive : directive.substring(0, equals)).trim()
+                    .toLowerCase(Locale.ROOT);
+                String value = equals == -1 ? null : unquote(directive.substring(equals + 1).trim());
+                switch (name) {
+                    case "no-store" -> noStore = true;
+                    case "no-cache" -> noCache = true;
+                    case "private" -> isPrivate = true;
+                    case "public" -> isPublic = true;
+                    case "must-revalidate", "proxy-revalidate" -> mustRevalidate = true;
+                    case "max-age" -> maxAge = parseSeconds(value);
+                    case "s-maxage" -> sMaxAge = parseSeconds(value);
+                    case "stale-while-revalidate" -> staleWhileRevalidate = parseSeconds(value);
+                    case "stale-if-error" -> staleIfError = parseSeconds(value);
+                    default -> {
+                    }
+                }
+            }
+        }
+        return new CacheControl(noStore, noCache, isPrivate, isPublic, mustRevalidate, maxAge, sMaxAge,
+            staleWhileRevalidate, staleIfError);
+    }
+
+    /**
+     * 按逗号拆分指令，引号内的逗号（例如 private="Set-Cookie, Set-Cookie2"）不作为分隔符。
+     *
+     * @param field Cache-Control 字段值
+     * @return 指令列表
+     */
+    private static String[] split(String field) {
+        if (field.indexOf('"') == -1) {
+            return field.split(",");
+        }
+        List<String> directives = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                directives.add(field.substring(start, i));
+                start = i + 1;
+            }
+        }
+        directives.add(field.substring(start));
+        return directives.toArray(new String[0]);
+    }
+
+    /**
+     * 去掉指令值两侧的引号。
+     *
+     * @param value 指令值
+     * @return 去掉引号后的值
+     */
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * 解析以秒为单位的指令值。
+     *
+     * @param value 指令值
+     * @return 秒数，缺失或格式错误时返回 0
+     */
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cn.edu.hit.cache;
+
+import java.time.ZonedDateTime;
+
+/**
+ * @param filePath 缓存文件的路径
+ * @param lastModified 响应的最后修改时间
+ * @param storedAt 收到响应（或最近一次验证成功）的时间（毫秒）
+ * @param initialAge 收到响应时响应已有的年龄（毫秒），来自 Age 头部及 Date 与收到时间之差
+ * @param lifetime 新鲜期（毫秒），年龄小于新鲜期的缓存无需验证即可使用
+ * @param vary 响应的 Vary 头部规范化后的字段名列表（小写，逗号分隔），没有 Vary 时为 null
+ * @param size 缓存文件的大小（字节），写入缓存文件之前为 0
+ */
+public record CacheEntry(String filePath, ZonedDateTime lastModified, long storedAt, long initialAge, long lifetime,
+    String vary, long size) {
+
+    /**
+     * 返回记录了缓存文件大小的缓存条目。
+     *
+     * @param size 缓存文件的大小（字节）
+     * @return 新的缓存条目
+     */
+    public CacheEntry withSize(long size) {
+        return new CacheEntry(filePath, lastModified, storedAt, initialAge, lifetime, vary, size);
+    }
+
+    /**
+     * 计算缓存条目在指定时刻的年龄（RFC 9111 第 4.2.3 节）。
+     *
+     * @param now 当前时间（毫秒）
+     * @return 年龄（毫秒）
+     */
+    public long age(long now) {
+        return initialAge + Math.max(0, now - storedAt);
+    }
+
+    /**
+     * 判断缓存条目在指定时刻是否仍然新鲜。
+     *
+     * @param now 当前时间（毫秒）
+     * @return 如果年龄小于新鲜期则返回 true
+     */
+    public boolean isFresh(long now) {
+        return age(now) < lifetime;
+    }
+}
@@ -0,0 +1,179 @@
+package cn.edu.hit.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import cn.edu.hit.core.HttpHeaders;
+import cn.edu.hit.core.HttpResponse;
+import cn.edu.hit.core.HttpStatus;
+
+/**
+ * 缓存文件的二进制格式。所有整数均为大端序，字符串为长度前缀的 UTF-8（{@link DataOutputStream#writeUTF}）。
+ *
+ * <pre>
+ * 索引头（固定 26 字节）:
+ *   int   magic          0x48434631（"HCF1"）
+ *   short version        格式版本
+ *   int   metadataLength 元数据长度
+ *   long  bodyOffset     响应体在文件中的偏移（= 26 + metadataLength）
+ *   long  bodyLength     响应体长度
+ * 元数据:
+ *   UTF   key            缓存键
+ *   UTF   httpVersion    HTTP 版本
+ *   short statusCode     状态码
+ *   int   headerCount    头部字段数量
+ *   UTF   name, UTF value（重复 headerCount 次）
+ * 响应体:
+ *   bodyLength 字节的原始响应体
+ * </pre>
+ * <p>
+ * 读取时只解析索引头与元数据，响应体保留在文件中，命中时通过 {@link FileChannel#transferTo} 直接发送。
+ */
+public class CacheFile {
+
+    private static final int MAGIC = 0x48434631; // 文件标识 "HCF1"
+    private static final short VERSION = 1; // 当前格式版本
+    private static final int INDEX_HEADER_SIZE = 4 + 2 + 4 + 8 + 8; // 索引头长度
+
+    /**
+     * 将响应写入缓存文件。先写入同目录下的临时文件再原子地替换目标文件，正在读取旧文件的请求不受影响。
+     *
+     * @param path 缓存文件路径
+     * @param key 缓存键
+     * @param head 要缓存的响应头
+     * @param body 完整的响应体
+     * @return 缓存文件的大小（字节）
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public static long write(Path path, String key, HttpResponse head, byte[] body) throws IOException {
+        ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream(512);
+        DataOutputStream metadata = new DataOutputStream(metadataBytes);
+        metadata.writeUTF(key);
+        metadata.writeUTF(head.getVersion());
+        metadata.writeShort(head.getStatusCode().getCode());
+        HttpHeaders headers = head.getHeaders();
+        metadata.writeInt(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            metadata.writeUTF(headers.getName(i));
+            metadata.writeUTF(headers.getValue(i));
+        }
+
+        ByteBuffer indexHeader = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+        indexHeader.putInt(MAGIC)
+            .putShort(VERSION)
+            .putInt(metadataBytes.size())
+            .putLong(INDEX_HEADER_SIZE + metadataBytes.size())
+            .putLong(body.length)
+            .flip();
+        ByteBuffer[] buffers = {indexHeader, ByteBuffer.wrap(metadataBytes.toByteArray()), ByteBuffer.wrap(body)};
+
+        long length = INDEX_HEADER_SIZE + metadataBytes.size() + body.length;
+
+        Path tempFile = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                // 按写出的总长度判断是否完成，响应体为空时索引头与元数据同样需要写出
+                long written = 0;
+                while (written < length) {
+                    written += channel.write(buffers);
+                }
+            }
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return length;
+    }
+
+    /**
+     * 打开缓存文件并读取索引头与元数据，响应体不读入内存。
+     *
+     * @param path 缓存文件路径
+     * @return 缓存的响应，持有打开的文件通道，使用完毕后必须关闭
+     * @throws IOException 如果发生 I/O 错误，或文件格式、版本不匹配
+     */
+    public static CachedResponse read(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer indexHeader = readFully(channel, 0, INDEX_HEADER_SIZE);
+            int magic = indexHeader.getInt();
+            short version = indexHeader.getShort();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("不支持的缓存文件格式: " + path);
+            }
+            int metadataLength = indexHeader.getInt();
+            long bodyOffset = indexHeader.getLong();
+            long bodyLength = indexHeader.getLong();
+            if (bodyOffset != INDEX_HEADER_SIZE + metadataLength || bodyOffset + bodyLength != channel.size()) {
+                throw new IOException("缓存文件已损坏: " + path);
+            }
+
+            ByteBuffer metadataBuffer = readFully(channel, INDEX_HEADER_SIZE, metadataLength);
+            DataInputStream metadata = new DataInputStream(
+                new ByteArrayInputStream(metadataBuffer.array(), 0, metadataLength));
+            metadata.readUTF(); // 缓存键
+            HttpResponse.Builder builder = HttpResponse.newBuilder();
+            builder.version(metadata.readUTF());
+            builder.statusCode(HttpStatus.getStatusFromCode(metadata.readShort()));
+            int headerCount = metadata.readInt();
+            for (int i = 0; i < headerCount; i++) {
+                builder.addHeader(metadata.readUTF(), metadata.readUTF());
+            }
+            builder.body(new byte[0]);
+            return new CachedResponse(builder.build(), channel, bodyOffset, bodyLength);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 检查缓存文件是否完整：只读取索引头，校验文件标识、格式版本以及文件长度。
+     *
+     * @param path 缓存文件路径
+     * @return 如果文件存在且完整则返回 true
+     */
+    public static boolean isValid(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer indexHeader = readFully(channel, 0, INDEX_HEADER_SIZE);
+            if (indexHeader.getInt() != MAGIC || indexHeader.getShort() != VERSION) {
+                return false;
+            }
+            int metadataLength = indexHeader.getInt();
+            long bodyOffset = indexHeader.getLong();
+            long bodyLength = indexHeader.getLong();
+            return bodyOffset == INDEX_HEADER_SIZE + metadataLength && bodyOffset + bodyLength == channel.size();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 从文件通道的指定位置读取指定长度的数据。
+     *
+     * @param channel 文件通道
+     * @param position 起始位置
+     * @param length 长度
+     * @return 读取到的数据，已切换为读模式
+     * @throws IOException 如果发生 I/O 错误或文件过短
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("缓存文件过短");
+            }
+        }
+        return buffer.flip();
+    }
+}
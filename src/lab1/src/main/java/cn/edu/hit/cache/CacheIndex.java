@@ -0,0 +1,270 @@
+package cn.edu.hit.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 持久化的缓存索引，使代理重启后仍能使用磁盘上已有的缓存文件。
+ * <p>
+ * 索引以追加写入的日志保存在缓存目录下：每次放入或移除缓存条目都追加一条记录。启动时重放日志得到索引，
+ * 逐个校验缓存文件是否完整，删除不在索引中的文件，然后将当前索引重写为新的日志（检查点）。
+ * 运行期间日志中的过期记录过多时同样会重写日志。日志尾部因进程崩溃而不完整的记录会被忽略。
+ *
+ * <pre>
+ * 日志头:  int magic 0x48434931（"HCI1"）, short version
+ * 放入:    byte 1, UTF key, UTF filePath（相对于缓存目录）, long lastModified（毫秒，-1 表示无）, long storedAt, long initialAge,
+ *          long lifetime, UTF vary（空字符串表示无）, long size
+ * 移除:    byte 2, UTF key
+ * </pre>
+ */
+@Slf4j
+public class CacheIndex implements Closeable {
+
+    private static final String JOURNAL_FILE_NAME = "index.journal"; // 日志文件名
+    private static final int MAGIC = 0x48434931; // 日志文件标识 "HCI1"
+    private static final short VERSION = 4; // 日志格式版本
+    private static final byte RECORD_PUT = 1; // 放入记录
+    private static final byte RECORD_REMOVE = 2; // 移除记录
+    private static final int MIN_COMPACTION_RECORDS = 1024; // 触发重写日志的最少记录数
+
+    private final Path directory; // 缓存目录
+    private final Path journalPath; // 日志文件路径
+    private final ReentrantLock lock = new ReentrantLock(); // 保护日志写入
+    private DataOutputStream journal; // 日志输出流
+    private int journalRecords; // 当前日志中的记录数
+
+    /**
+     * 构造函数，指定缓存目录。
+     *
+     * @param directory 缓存目录
+     */
+    public CacheIndex(Path directory) {
+        this.directory = directory;
+        this.journalPath = directory.resolve(JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * 加载索引：重放日志，丢弃缓存文件缺失或损坏的条目，删除索引之外的文件，然后写入检查点并打开日志准备追加。
+     *
+     * @return 缓存键到缓存条目的映射
+     * @throws IOException 如果读取缓存目录或写入日志失败
+     */
+    public Map<String, CacheEntry> load() throws IOException {
+        Map<String, CacheEntry> entries = new HashMap<>();
+        if (Files.exists(journalPath)) {
+            replay(entries);
+        }
+        int replayed = entries.size();
+        entries.values().removeIf(entry -> !CacheFile.isValid(Paths.get(entry.filePath())));
+        int orphans = deleteOrphans(entries);
+        compact(entries);
+        log.info("已加载缓存索引，有效条目: {}，丢弃无效条目: {}，删除无关文件: {}", entries.size(),
+            replayed - entries.size(), orphans);
+        return entries;
+    }
+
+    /**
+     * 记录放入缓存条目。
+     *
+     * @param key 缓存键
+     * @param entry 缓存条目
+     * @throws IOException 如果写入日志失败
+     */
+    public void recordPut(String key, CacheEntry entry) throws IOException {
+        lock.lock();
+        try {
+            writePut(journal, key, entry);
+            journal.flush();
+            journalRecords++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录移除缓存条目。
+     *
+     * @param key 缓存键
+     * @throws IOException 如果写入日志失败
+     */
+    public void recordRemove(String key) throws IOException {
+        lock.lock();
+        try {
+            journal.writeByte(RECORD_REMOVE);
+            journal.writeUTF(key);
+            journal.flush();
+            journalRecords++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 判断日志中的过期记录是否过多，需要重写。
+     *
+     * @param liveEntries 当前有效的条目数
+     * @return 如果需要重写日志则返回 true
+     */
+    public boolean shouldCompact(int liveEntries) {
+        return journalRecords > MIN_COMPACTION_RECORDS && journalRecords > 2 * liveEntries;
+    }
+
+    /**
+     * 将当前索引写为新的日志（检查点），替换旧的日志。新日志先写入临时文件并同步到磁盘，再原子地替换旧日志。
+     *
+     * @param entries 当前的缓存条目
+     * @throws IOException 如果写入日志失败
+     */
+    public void compact(Map<String, CacheEntry> entries) throws IOException {
+        lock.lock();
+        try {
+            Path tempFile = Files.createTempFile(directory, JOURNAL_FILE_NAME, ".tmp");
+            int records = 0;
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+                    writePut(out, entry.getKey(), entry.getValue());
+                    records++;
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            } catch (IOException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            Files.move(tempFile, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalPath.toFile(), true)));
+            journalRecords = records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭日志。
+     *
+     * @throws IOException 如果关闭日志失败
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 重放日志中的记录。遇到不完整或无法识别的记录时停止，之前的记录仍然有效。
+     *
+     * @param entries 重放结果
+     * @throws IOException 如果读取日志失败
+     */
+    private void replay(Map<String, CacheEntry> entries) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                log.warn("缓存索引格式不匹配，忽略已有索引");
+                return;
+            }
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    return;
+                }
+                String key = in.readUTF();
+                if (type == RECORD_PUT) {
+                    String filePath = directory.resolve(in.readUTF()).toString();
+                    long lastModified = in.readLong();
+                    long storedAt = in.readLong();
+                    long initialAge = in.readLong();
+                    long lifetime = in.readLong();
+                    String vary = in.readUTF();
+                    long size = in.readLong();
+                    entries.put(key, new CacheEntry(filePath, lastModified == -1 ? null
+                        : ZonedDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneOffset.UTC), storedAt,
+                        initialAge, lifetime, vary.isEmpty() ? null : vary, size));
+                } else if (type == RECORD_REMOVE) {
+                    entries.remove(key);
+                } else {
+                    log.warn("缓存索引中存在无法识别的记录，忽略其后的内容");
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            log.warn("缓存索引末尾的记录不完整，已忽略");
+        }
+    }
+
+    /**
+     * 写入一条放入记录。
+     *
+     * @param out 日志输出流
+     * @param key 缓存键
+     * @param entry 缓存条目
+     * @throws IOException 如果写入日志失败
+     */
+    private void writePut(DataOutputStream out, String key, CacheEntry entry) throws IOException {
+        out.writeByte(RECORD_PUT);
+        out.writeUTF(key);
+        out.writeUTF(directory.relativize(Paths.get(entry.filePath())).toString());
+        out.writeLong(entry.lastModified() != null ? entry.lastModified().toInstant().toEpochMilli() : -1);
+        out.writeLong(entry.storedAt());
+        out.writeLong(entry.initialAge());
+        out.writeLong(entry.lifetime());
+        out.writeUTF(entry.vary() != null ? entry.vary() : "");
+        out.writeLong(entry.size());
+    }
+
+    /**
+     * 删除缓存目录（包括各级子目录）中不属于任何缓存条目的文件（例如写入中断留下的临时文件）。
+     *
+     * @param entries 有效的缓存条目
+     * @return 删除的文件数
+     * @throws IOException 如果读取缓存目录失败
+     */
+    private int deleteOrphans(Map<String, CacheEntry> entries) throws IOException {
+        Set<Path> referenced = new HashSet<>();
+        entries.values().forEach(entry -> referenced.add(Paths.get(entry.filePath())));
+        int deleted = 0;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>)files::iterator) {
+                boolean referencedFile = file.equals(journalPath) || referenced.contains(file);
+                if (Files.isRegularFile(file) && !referencedFile) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,204 @@
+package cn.edu.hit.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 磁盘缓存的后台清理任务，定期执行，每次只工作一个很短的时间片，未完成的工作留到下次继续，避免造成延迟尖峰。
+ * <p>
+ * 每个时间片先沿游标继续扫描缓存条目，删除超过保留期限的条目；然后在磁盘占用或条目数超过上限时，
+ * 每次采样若干条目并驱逐其中最合适的一个：优先驱逐已过期的条目，其次驱逐最久未命中的条目（近似 LRU）。
+ */
+@Slf4j
+public class CacheJanitor {
+
+    private static final int EVICTION_SAMPLE_SIZE = 16; // 每次驱逐前采样的条目数
+
+    private final CacheManager cacheManager; // 所属缓存管理器
+    private final long maxBytes; // 磁盘占用上限（字节）
+    private final int maxEntries; // 条目数上限
+    private final long sliceNanos; // 每次执行的最长时间（纳秒）
+    private final LongAdder reclaimedBytes = new LongAdder(); // 累计回收的字节数
+    private final LongAdder expiredEvictions = new LongAdder(); // 因超过保留期限删除的条目数
+    private final LongAdder quotaEvictions = new LongAdder(); // 因超出容量或条目数上限驱逐的条目数
+    private Iterator<Map.Entry<String, CacheEntry>> sweepCursor; // 过期扫描的游标，跨时间片保持
+    private Iterator<Map.Entry<String, CacheEntry>> sampleCursor; // 驱逐采样的游标，跨时间片保持
+
+    /**
+     * 构造函数。
+     *
+     * @param cacheManager 所属缓存管理器
+     * @param maxBytes 磁盘占用上限（字节）
+     * @param maxEntries 条目数上限
+     * @param sliceMillis 每次执行的最长时间（毫秒）
+     */
+    public CacheJanitor(CacheManager cacheManager, long maxBytes, int maxEntries, long sliceMillis) {
+        this.cacheManager = cacheManager;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.sliceNanos = TimeUnit.MILLISECONDS.toNanos(sliceMillis);
+    }
+
+    /**
+     * 启动后台清理任务。
+     *
+     * @param intervalMillis 执行间隔（毫秒）
+     */
+    public void start(long intervalMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-janitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSlice, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("启动缓存清理任务，容量上限: {} 字节，条目数上限: {}", maxBytes, maxEntries);
+    }
+
+    /**
+     * 执行一个时间片的清理工作。
+     */
+    void runSlice() {
+        try {
+            long deadline = System.nanoTime() + sliceNanos;
+            long now = System.currentTimeMillis();
+            long expiredBefore = expiredEvictions.sum();
+            long quotaBefore = quotaEvictions.sum();
+            long reclaimed = sweepExpired(now, deadline) + enforceQuota(now, deadline);
+            long expired = expiredEvictions.sum() - expiredBefore;
+            long evicted = quotaEvictions.sum() - quotaBefore;
+            if (expired + evicted > 0) {
+                reclaimedBytes.add(reclaimed);
+                log.info("回收 {} 字节，删除过期条目 {} 个，驱逐超出上限的条目 {} 个，{}", reclaimed, expired, evicted, this);
+            }
+        } catch (RuntimeException e) {
+            // 定时任务抛出异常后不会再次执行，因此只记录错误
+            log.error("清理缓存时发生错误: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 沿游标扫描缓存条目，删除超过保留期限的条目，直到时间片用完或扫描完一轮。
+     *
+     * @param now 当前时间（毫秒）
+     * @param deadline 时间片的截止时间（纳秒）
+     * @return 回收的字节数
+     */
+    private long sweepExpired(long now, long deadline) {
+        if (sweepCursor == null || !sweepCursor.hasNext()) {
+            sweepCursor = cacheManager.entryIterator(); // 开始新一轮扫描
+        }
+        long reclaimed = 0;
+        while (sweepCursor.hasNext() && System.nanoTime() < deadline) {
+            Map.Entry<String, CacheEntry> entry = sweepCursor.next();
+            if (cacheManager.isExpired(entry.getValue(), now)
+                && cacheManager.remove(entry.getKey(), entry.getValue())) {
+                expiredEvictions.increment();
+                reclaimed += entry.getValue().size();
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * 磁盘占用或条目数超过上限时，采样驱逐条目，直到回到上限以内或时间片用完。
+     *
+     * @param now 当前时间（毫秒）
+     * @param deadline 时间片的截止时间（纳秒）
+     * @return 回收的字节数
+     */
+    private long enforceQuota(long now, long deadline) {
+        long reclaimed = 0;
+        while (isOverQuota() && System.nanoTime() < deadline) {
+            Map.Entry<String, CacheEntry> victim = null;
+            for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+                if (sampleCursor == null || !sampleCursor.hasNext()) {
+                    sampleCursor = cacheManager.entryIterator();
+                    if (!sampleCursor.hasNext()) {
+                        return reclaimed;
+                    }
+                }
+                Map.Entry<String, CacheEntry> candidate = sampleCursor.next();
+                if (victim == null || isBetterVictim(candidate, victim, now)) {
+                    victim = candidate;
+                }
+            }
+            if (cacheManager.remove(victim.getKey(), victim.getValue())) {
+                quotaEvictions.increment();
+                reclaimed += victim.getValue().size();
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * 判断候选条目是否比当前选中的条目更适合驱逐：已过期的条目优先，其次是最久未命中的条目。
+     *
+     * @param candidate 候选条目
+     * @param victim 当前选中的条目
+     * @param now 当前时间（毫秒）
+     * @return 如果候选条目更适合驱逐则返回 true
+     */
+    private boolean isBetterVictim(Map.Entry<String, CacheEntry> candidate, Map.Entry<String, CacheEntry> victim,
+        long now) {
+        boolean candidateStale = !candidate.getValue().isFresh(now);
+        boolean victimStale = !victim.getValue().isFresh(now);
+        if (candidateStale != victimStale) {
+            return candidateStale;
+        }
+        return cacheManager.lastAccess(candidate.getKey(), candidate.getValue())
+            < cacheManager.lastAccess(victim.getKey(), victim.getValue());
+    }
+
+    /**
+     * 判断磁盘占用或条目数是否超过上限。
+     *
+     * @return 如果超过上限则返回 true
+     */
+    private boolean isOverQuota() {
+        return cacheManager.getDiskBytes() > maxBytes || cacheManager.getEntryCount() > maxEntries;
+    }
+
+    /**
+     * 获取累计回收的字节数。
+     *
+     * @return 累计回收的字节数
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes.sum();
+    }
+
+    /**
+     * 获取因超过保留期限删除的条目数。
+     *
+     * @return 删除的条目数
+     */
+    public long getExpiredEvictions() {
+        return expiredEvictions.sum();
+    }
+
+    /**
+     * 获取因超出容量或条目数上限驱逐的条目数。
+     *
+     * @return 驱逐的条目数
+     */
+    public long getQuotaEvictions() {
+        return quotaEvictions.sum();
+    }
+
+    /**
+     * 返回统计信息的字符串表示形式。
+     *
+     * @return 统计信息
+     */
+    @Override
+    public String toString() {
+        return String.format("磁盘占用: %d/%d 字节, 条目: %d/%d, 累计回收: %d 字节", cacheManager.getDiskBytes(), maxBytes,
+            cacheManager.getEntryCount(), maxEntries, getReclaimedBytes());
+    }
+}
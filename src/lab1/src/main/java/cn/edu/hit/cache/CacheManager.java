@@ -0,0 +1,473 @@
+package cn.edu.hit.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cn.edu.hit.config.ProxyConfig;
+import cn.edu.hit.core.HttpRequest;
+import cn.edu.hit.core.HttpResponse;
+import cn.edu.hit.metrics.ProxyMetrics;
+import cn.edu.hit.utils.StrUtils;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 缓存管理器：维护缓存键到缓存文件的映射，以及内存缓存与持久化索引。
+ * <p>
+ * 缓存文件按文件名（缓存键的哈希）的前两个字节分布在两级子目录中（例如 cache/3f/a2/3fa2….cache），
+ * 避免单个目录中的文件过多。缓存文件由后台线程写入：写入完成前，新的响应保存在待写入表中，命中时直接从内存返回；
+ * 写入队列已满时由请求线程自行写入。同一缓存键的写入与删除由分段锁串行化，较早的写入被较新的写入取代时不再执行。
+ * 磁盘占用由 {@link CacheJanitor} 在后台分时间片清理，使其不超过配置的容量与条目数上限。
+ */
+@Slf4j
+public class CacheManager {
+
+    private static final String CWD = System.getProperty("user.dir"); // 获取当前工作目录
+    public static final String CACHE_DIRECTORY = CWD + File.separator + "cache"; // 缓存目录
+
+    private static final long STALE_RETENTION_SECONDS = 360000; // 缓存过期后保留用于条件请求的时间（100小时）
+    private static final String CACHE_FILE_EXTENSION = ".cache"; // 缓存文件扩展名
+    private static final int MAX_CACHEABLE_BODY_SIZE = 8 * 1024 * 1024; // 流式转发时允许缓存的最大响应体大小
+    private static final int MAX_PROMOTED_BODY_SIZE = 256 * 1024; // 磁盘命中时提升到内存缓存的最大响应体大小
+    private static final int LOCK_STRIPES = 64; // 分段锁的数量，必须是 2 的幂
+
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>(); // 缓存映射，键为 URI 或 URI 加 Vary 字段值
+    private final Map<String, String> varyByUri = new ConcurrentHashMap<>(); // 响应带有 Vary 的 URI 到其 Vary 字段名的映射
+    private final MemoryCache memoryCache; // 内存缓存，命中时无需读取磁盘，为 null 表示关闭
+    private final CacheIndex index; // 持久化的缓存索引
+    private final Map<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>(); // 尚未写入磁盘的响应
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES]; // 按缓存键分段的锁，串行化同一键的写入与删除
+    private final ExecutorService writer; // 后台写入缓存文件的线程池，为 null 表示同步写入
+    private final AtomicLong diskBytes = new AtomicLong(); // 缓存文件占用的字节数
+    private final Map<String, Long> accessTimes = new ConcurrentHashMap<>(); // 缓存键最近一次命中的时间（毫秒）
+    private final CacheJanitor janitor; // 后台清理任务
+
+    /**
+     * 构造一个 CacheManager，初始化缓存目录并加载上次运行留下的缓存索引。
+     */
+    public CacheManager() {
+        this.memoryCache = ProxyConfig.MEMORY_CACHE_BYTES > 0 ? new MemoryCache(ProxyConfig.MEMORY_CACHE_BYTES) : null;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        // 队列已满时由提交任务的请求线程自行写入，限制待写入响应占用的内存
+        this.writer = ProxyConfig.CACHE_WRITE_BEHIND ? new ThreadPoolExecutor(ProxyConfig.CACHE_WRITER_THREADS,
+            ProxyConfig.CACHE_WRITER_THREADS, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(ProxyConfig.CACHE_WRITE_QUEUE_SIZE),
+            Thread.ofPlatform().name("cache-writer-", 0).daemon().factory(), new ThreadPoolExecutor.CallerRunsPolicy())
+            : null;
+        try {
+            Files.createDirectories(Paths.get(CACHE_DIRECTORY)); // 创建缓存目录
+            this.index = new CacheIndex(Paths.get(CACHE_DIRECTORY));
+            cache.putAll(index.load()); // 重启后继续使用磁盘上已有的缓存
+            cache.forEach((key, entry) -> {
+                if (entry.vary() != null) {
+                    varyByUri.put(CachePolicy.uriOf(key), entry.vary());
+                }
+                diskBytes.addAndGet(entry.size());
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.janitor = new CacheJanitor(this, ProxyConfig.CACHE_MAX_BYTES, ProxyConfig.CACHE_MAX_ENTRIES,
+            ProxyConfig.CACHE_JANITOR_SLICE_MILLIS);
+        janitor.start(ProxyConfig.CACHE_JANITOR_INTERVAL_MILLIS);
+    }
+
+    /**
+     * 为给定的缓存键生成一个唯一的缓存文件路径，文件名的前两个字节（四个十六进制字符）决定两级子目录。
+     *
+     * @param key 要生成缓存文件路径的缓存键
+     * @return 生成的缓存文件路径
+     */
+    private static String generateUniqueCacheFilePath(String key) {
+        String fileName = StrUtils.hashString(key) + CACHE_FILE_EXTENSION; // 生成唯一文件名
+        return CACHE_DIRECTORY + File.separator + fileName.substring(0, 2) + File.separator + fileName.substring(2, 4)
+            + File.separator + fileName; // 返回完整的缓存文件路径
+    }
+
+    /**
+     * 计算请求对应的缓存键。该 URI 的响应带有 Vary 时，缓存键还包含请求中相应字段的值。
+     *
+     * @param request 客户端请求
+     * @return 缓存键
+     */
+    public String keyOf(HttpRequest request) {
+        String uri = request.getUri().toString();
+        return CachePolicy.variantKey(uri, varyByUri.get(uri), request);
+    }
+
+    /**
+     * 检索与请求匹配的缓存响应，无论是否新鲜；过期的缓存仍可用于条件请求。优先从内存缓存读取，
+     * 未命中时读取缓存文件的响应头，响应体较小时一并读入并放入内存缓存，否则保留在文件中，发送时直接从文件传输。
+     *
+     * @param request 客户端请求
+     * @return 缓存的响应，如果未找到或已超过保留期限则返回 null；使用完毕后必须关闭
+     */
+    public CachedResponse get(HttpRequest request) {
+        String key = keyOf(request);
+        PendingWrite pending = pendingWrites.get(key);
+        if (pending != null) {
+            return pending.response().withEntry(key, pending.entry()); // 缓存文件尚未写入，直接使用内存中的响应
+        }
+        CacheEntry entry = cache.get(key); // 从缓存中获取条目
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) { // 检查条目是否存在且未超过保留期限
+            if (memoryCache != null) {
+                memoryCache.invalidate(key);
+            }
+            return null; // 返回 null 表示未找到或已过期
+        }
+        accessTimes.put(key, System.currentTimeMillis());
+        if (memoryCache != null) {
+            CachedResponse response = memoryCache.get(key);
+            if (response != null) {
+                return response.withEntry(key, entry); // 内存缓存命中
+            }
+        }
+        CachedResponse response;
+        try {
+            response = CacheFile.read(Paths.get(entry.filePath())); // 只读取缓存文件的响应头
+            if (memoryCache != null && response.getBodyLength() <= MAX_PROMOTED_BODY_SIZE) {
+                try (CachedResponse fileResponse = response) {
+                    response = new CachedResponse(fileResponse.getHead(), fileResponse.readBody());
+                }
+                memoryCache.put(key, response);
+            }
+        } catch (IOException e) {
+            log.warn("读取缓存文件失败，丢弃缓存: {}", e.getMessage());
+            remove(key, entry);
+            return null;
+        }
+        return response.withEntry(key, entry);
+    }
+
+    /**
+     * 缓存请求对应的响应。分块传输的响应体已被解码，缓存时统一改为使用 Content-Length。
+     * 响应带有 Vary 时按请求中相应字段的值分别缓存。缓存文件在后台写入，写入完成后才记录到缓存映射与持久化索引。
+     *
+     * @param request 客户端请求
+     * @param response 要缓存的 HttpResponse，响应体必须完整
+     */
+    public void put(HttpRequest request, HttpResponse response) {
+        long responseTime = System.currentTimeMillis();
+        byte[] body = response.getBody() != null ? response.getBody() : new byte[0];
+        HttpResponse head = new HttpResponse.Builder(response).removeHeader("Transfer-Encoding")
+            .header("Content-Length", String.valueOf(body.length))
+            .body(new byte[0])
+            .build();
+        String uri = request.getUri().toString();
+        String vary = CachePolicy.normalizeVary(head);
+        if (vary != null) {
+            varyByUri.put(uri, vary);
+        } else {
+            varyByUri.remove(uri);
+        }
+        String key = CachePolicy.variantKey(uri, vary, request);
+        String filePath = generateUniqueCacheFilePath(key); // 生成缓存文件路径
+        CacheEntry entry = CachePolicy.newEntry(filePath, head, responseTime);
+        PendingWrite pending = new PendingWrite(new CachedResponse(head, body), entry);
+        pendingWrites.put(key, pending); // 取代同一缓存键尚未执行的写入
+        log.debug("已缓存响应: {}，新鲜期: {} 秒", uri, entry.lifetime() / 1000);
+        if (memoryCache != null) {
+            memoryCache.put(key, pending.response());
+            log.debug("内存缓存 [{}]", memoryCache);
+        }
+        if (writer != null) {
+            writer.execute(() -> write(key, pending, body));
+        } else {
+            write(key, pending, body);
+        }
+    }
+
+    /**
+     * 将待写入的响应写入缓存文件（先写临时文件再原子地重命名），然后记录到缓存映射与持久化索引。
+     * 如果该写入已被同一缓存键较新的写入取代或已被移除，则不再执行。
+     *
+     * @param key 缓存键
+     * @param pending 待写入的响应
+     * @param body 完整的响应体
+     */
+    private void write(String key, PendingWrite pending, byte[] body) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            if (pendingWrites.get(key) != pending) {
+                return;
+            }
+            Path path = Paths.get(pending.entry().filePath());
+            Files.createDirectories(path.getParent());
+            long size = CacheFile.write(path, key, pending.response().getHead(), body); // 写入缓存文件
+            CacheEntry entry = pending.entry().withSize(size);
+            CacheEntry previous = cache.put(key, entry); // 将缓存条目放入缓存映射，同一缓存键的旧文件已被替换
+            diskBytes.addAndGet(size - (previous != null ? previous.size() : 0));
+            accessTimes.put(key, entry.storedAt());
+            recordPut(key, entry); // 记录到持久化索引
+        } catch (IOException e) {
+            log.error("写入缓存文件失败: {}", e.getMessage());
+        } finally {
+            pendingWrites.remove(key, pending);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 目标服务器以 304 确认缓存仍然有效后，用 304 响应中的头部更新缓存的响应头，并重新开始计算新鲜期。
+     * 缓存文件中的响应头保持不变，更新后的新鲜期记录在缓存索引中。
+     *
+     * @param cachedResponse 被验证的缓存响应
+     * @param notModified 目标服务器的 304 响应
+     * @return 更新后的缓存响应，与原缓存响应共享响应体
+     */
+    public CachedResponse revalidated(CachedResponse cachedResponse, HttpResponse notModified) {
+        HttpResponse head = CachePolicy.mergeNotModified(cachedResponse.getHead(), notModified);
+        String key = cachedResponse.getKey();
+        CacheEntry entry = cachedResponse.getEntry();
+        if (key == null || entry == null) {
+            return cachedResponse;
+        }
+        CacheEntry refreshed =
+            CachePolicy.newEntry(entry.filePath(), head, System.currentTimeMillis()).withSize(entry.size());
+        if (cache.replace(key, entry, refreshed)) {
+            recordPut(key, refreshed);
+        }
+        CachedResponse updated = cachedResponse.withHead(head, refreshed);
+        if (memoryCache != null && cachedResponse.isInMemory()) {
+            memoryCache.put(key, updated);
+        }
+        return updated;
+    }
+
+    /**
+     * 移除 URI 的所有缓存变体，例如在不安全的请求方法（POST、PUT、DELETE 等）成功之后（RFC 9111 第 4.4 节）。
+     *
+     * @param uri 要移除缓存的 URI
+     */
+    public void invalidate(String uri) {
+        for (String key : pendingWrites.keySet()) {
+            if (CachePolicy.uriOf(key).equals(uri)) {
+                ReentrantLock lock = lockFor(key);
+                lock.lock();
+                try {
+                    pendingWrites.remove(key); // 持有锁时移除，正在进行的写入要么已完成，要么不再执行
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        if (varyByUri.remove(uri) == null) {
+            CacheEntry entry = cache.get(uri);
+            if (entry != null) {
+                remove(uri, entry);
+            }
+            return;
+        }
+        cache.forEach((key, entry) -> {
+            if (CachePolicy.uriOf(key).equals(uri)) {
+                remove(key, entry);
+            }
+        });
+    }
+
+    /**
+     * 移除缓存条目并删除其缓存文件。
+     *
+     * @param key 缓存键
+     * @param entry 缓存条目，只有当前映射的仍是该条目时才移除
+     * @return 如果缓存条目已被移除则返回 true
+     */
+    boolean remove(String key, CacheEntry entry) {
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            if (!cache.remove(key, entry)) {
+                return false;
+            }
+            diskBytes.addAndGet(-entry.size());
+            accessTimes.remove(key);
+            recordRemove(key);
+            if (memoryCache != null) {
+                memoryCache.invalidate(key);
+            }
+            Files.deleteIfExists(Paths.get(entry.filePath()));
+        } catch (IOException e) {
+            log.error("删除缓存文件失败: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * 获取缓存键对应的分段锁。
+     *
+     * @param key 缓存键
+     * @return 分段锁
+     */
+    private ReentrantLock lockFor(String key) {
+        int hash = key.hashCode(); // String 缓存了哈希码，再混合高位，与 HashMap 的做法相同
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * 为请求创建缓存写入器，用于在流式转发响应体的同时写入缓存。
+     *
+     * @param request 客户端请求
+     * @param head 要缓存的响应头
+     * @return 缓存写入器
+     */
+    public CacheWriter openWriter(HttpRequest request, HttpResponse head) {
+        return new CacheWriter(this, request, head, MAX_CACHEABLE_BODY_SIZE);
+    }
+
+    /**
+     * 获取内存缓存，用于查看统计信息。
+     *
+     * @return 内存缓存，关闭时返回 null
+     */
+    public MemoryCache getMemoryCache() {
+        return memoryCache;
+    }
+
+    /**
+     * 在持久化索引中记录放入缓存条目，日志中的过期记录过多时重写日志。索引写入失败不影响请求处理。
+     *
+     * @param key 缓存键
+     * @param entry 缓存条目
+     */
+    private void recordPut(String key, CacheEntry entry) {
+        try {
+            index.recordPut(key, entry);
+            if (index.shouldCompact(cache.size())) {
+                index.compact(cache);
+            }
+        } catch (IOException e) {
+            log.warn("写入缓存索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 在持久化索引中记录移除缓存条目。索引写入失败不影响请求处理，下次启动时会校验缓存文件。
+     *
+     * @param key 被移除的缓存键
+     */
+    private void recordRemove(String key) {
+        try {
+            index.recordRemove(key);
+        } catch (IOException e) {
+            log.warn("写入缓存索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 检查缓存条目是否已超过保留期限：过期（不再新鲜）后仍保留一段时间用于条件请求，超过保留期限后删除。
+     *
+     * @param entry 要检查的缓存条目
+     * @param now 当前时间（毫秒）
+     * @return 如果缓存条目已超过保留期限则返回 true，否则返回 false
+     */
+    boolean isExpired(CacheEntry entry, long now) {
+        long staleMillis = entry.age(now) - entry.lifetime(); // 过期了多久
+        return staleMillis > STALE_RETENTION_SECONDS * 1000;
+    }
+
+    /**
+     * 立即清理所有超过保留期限的缓存条目。后台清理任务会分时间片完成同样的工作，该方法用于需要立即回收空间的场合。
+     *
+     * @return 回收的字节数
+     */
+    public long clearExpiredCache() {
+        long now = System.currentTimeMillis();
+        long reclaimed = 0;
+        for (Map.Entry<String, CacheEntry> e : cache.entrySet()) {
+            if (isExpired(e.getValue(), now) && remove(e.getKey(), e.getValue())) { // 删除过期的缓存文件与条目
+                reclaimed += e.getValue().size();
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * 获取缓存条目的迭代器，供后台清理任务分批遍历。迭代器是弱一致的，遍历期间可以并发修改。
+     *
+     * @return 缓存条目的迭代器
+     */
+    Iterator<Map.Entry<String, CacheEntry>> entryIterator() {
+        return cache.entrySet().iterator();
+    }
+
+    /**
+     * 获取缓存键最近一次命中的时间，从未命中时为写入缓存的时间。
+     *
+     * @param key 缓存键
+     * @param entry 缓存条目
+     * @return 最近一次使用的时间（毫秒）
+     */
+    long lastAccess(String key, CacheEntry entry) {
+        return accessTimes.getOrDefault(key, entry.storedAt());
+    }
+
+    /**
+     * 获取缓存文件占用的字节数。
+     *
+     * @return 缓存文件占用的字节数
+     */
+    public long getDiskBytes() {
+        return diskBytes.get();
+    }
+
+    /**
+     * 获取磁盘缓存的条目数。
+     *
+     * @return 条目数
+     */
+    public int getEntryCount() {
+        return cache.size();
+    }
+
+    /**
+     * 将缓存的占用与统计信息注册为运行指标。
+     *
+     * @param metrics 运行指标
+     */
+    public void registerMetrics(ProxyMetrics metrics) {
+        metrics.registerGauge("proxy_cache_disk_bytes", "缓存文件占用的字节数", this::getDiskBytes);
+        metrics.registerGauge("proxy_cache_entries", "磁盘缓存的条目数", this::getEntryCount);
+        metrics.registerCounter("proxy_cache_janitor_reclaimed_bytes_total", "缓存清理任务累计回收的字节数",
+            janitor::getReclaimedBytes);
+        if (memoryCache != null) {
+            metrics.registerCounter("proxy_memory_cache_hits_total", "内存缓存命中次数", memoryCache::getHits);
+            metrics.registerCounter("proxy_memory_cache_misses_total", "内存缓存未命中次数", memoryCache::getMisses);
+            metrics.registerCounter("proxy_memory_cache_evictions_total", "内存缓存淘汰次数", memoryCache::getEvictions);
+            metrics.registerGauge("proxy_memory_cache_bytes", "内存缓存占用的字节数", memoryCache::getWeightedSize);
+        }
+    }
+
+    /**
+     * 获取后台清理任务，用于查看统计信息。
+     *
+     * @return 后台清理任务
+     */
+    public CacheJanitor getJanitor() {
+        return janitor;
+    }
+
+    /**
+     * 尚未写入磁盘的响应。
+     *
+     * @param response 内存中的完整响应
+     * @param entry 写入完成后记录的缓存条目
+     */
+    private record PendingWrite(CachedResponse response, CacheEntry entry) {
+    }
+}
@@ -0,0 +1,370 @@
+package cn.edu.hit.cache;
+
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import cn.edu.hit.config.ProxyConfig;
+import cn.edu.hit.core.HttpConstant;
+import cn.edu.hit.core.HttpHeaders;
+import cn.edu.hit.core.HttpRequest;
+import cn.edu.hit.core.HttpResponse;
+import cn.edu.hit.utils.DateUtils;
+
+/**
+ * 共享缓存的 HTTP 缓存规则（RFC 9111）：响应能否缓存、新鲜期的计算、缓存能否不经验证直接使用、条件请求的构造，
+ * 以及按 Vary 区分同一 URI 的不同变体。
+ * <p>
+ * 新鲜期依次取自 s-maxage、max-age、Expires 与 Date 之差；都没有时，带有 Last-Modified 的响应使用启发式新鲜期，
+ * 即 Date 与 Last-Modified 之差的 10%，最长一天。新鲜的缓存直接返回给客户端，不访问目标服务器；
+ * 过期的缓存使用 If-None-Match（ETag）与 If-Modified-Since（Last-Modified）向目标服务器验证。
+ * 刚过期不久的缓存可以先返回给客户端再在后台验证（stale-while-revalidate），目标服务器出错时也可以返回过期的缓存
+ * （stale-if-error），除非响应带有 must-revalidate 或 no-cache。
+ */
+public class CachePolicy {
+
+    private static final long HEURISTIC_FRACTION = 10; // 启发式新鲜期为 Date 与 Last-Modified 之差的 1/10
+    private static final long MAX_HEURISTIC_LIFETIME_MILLIS = 24 * 60 * 60 * 1000L; // 启发式新鲜期的上限（一天）
+    private static final Set<Integer> CACHEABLE_STATUS_CODES = Set.of(200, 203, 300, 301, 308, 404, 410); // 可缓存的状态码
+    private static final Set<String> NOT_MODIFIED_IGNORED_HEADERS = Set.of("content-length", "transfer-encoding",
+        "connection", "keep-alive", "proxy-connection"); // 304 响应中不用于更新缓存响应头的字段
+    private static final Set<String> UNSAFE_METHODS = Set.of("POST", "PUT", "DELETE", "PATCH"); // 可能修改资源的请求方法
+
+    /**
+     * 判断请求能否使用缓存：只有 GET 请求能使用缓存，请求带有 Cache-Control: no-store 时不使用缓存。
+     *
+     * @param request 客户端请求
+     * @return 如果可以查找缓存则返回 true
+     */
+    public static boolean canUseCache(HttpRequest request) {
+        return HttpConstant.GET.equals(request.getMethod()) && !CacheControl.parse(request.getHeaders()).noStore();
+    }
+
+    /**
+     * 判断请求完成后是否需要使目标 URI 的缓存失效（RFC 9111 第 4.4 节）：只有不安全的请求方法得到 2xx 或 3xx 响应，
+     * 才说明资源可能已被修改。安全的方法（包括带有 no-store 的 GET）与失败的请求不影响缓存，
+     * 否则任何客户端都可以清除共享缓存中的任意 URI。
+     *
+     * @param request 客户端请求
+     * @param response 目标服务器的响应
+     * @return 如果需要使缓存失效则返回 true
+     */
+    public static boolean invalidatesCache(HttpRequest request, HttpResponse response) {
+        int code = response.getStatusCode().getCode();
+        return UNSAFE_METHODS.contains(request.getMethod()) && code >= 200 && code < 400;
+    }
+
+    /**
+     * 判断响应能否被共享缓存保存（RFC 9111 第 3 节）。带有 Set-Cookie 的响应只有在声明 public 时才缓存，
+     * 避免把一个用户的会话发给其他用户。
+     *
+     * @param request 客户端请求
+     * @param response 目标服务器的响应
+     * @return 如果可以缓存则返回 true
+     */
+    public static boolean isCacheable(HttpRequest request, HttpResponse response) {
+        if (!canUseCache(request) || !CACHEABLE_STATUS_CODES.contains(response.getStatusCode().getCode())) {
+            return false;
+        }
+        HttpHeaders headers = response.getHeaders();
+        CacheControl cacheControl = CacheControl.parse(headers);
+        if (cacheControl.noStore() || cacheControl.isPrivate() || "*".equals(normalizeVary(response))) {
+            return false;
+        }
+        boolean shared = cacheControl.isPublic() || cacheControl.sMaxAge() >= 0 || cacheControl.mustRevalidate();
+        if (request.getHeaders().contains("Authorization") && !shared) {
+            return false;
+        }
+        if (headers.contains("Set-Cookie") && !cacheControl.isPublic()) {
+            return false;
+        }
+        // 没有显式新鲜期也没有验证器的响应缓存后无法使用
+        return cacheControl.maxAge() >= 0 || cacheControl.sMaxAge() >= 0 || headers.contains("Expires")
+            || hasValidator(response);
+    }
+
+    /**
+     * 判断响应是否带有验证器（ETag 或 Last-Modified），可用于条件请求。
+     *
+     * @param head 响应头
+     * @return 如果带有验证器则返回 true
+     */
+    public static boolean hasValidator(HttpResponse head) {
+        return head.getHeaders().contains("ETag") || head.getHeaders().contains("Last-Modified");
+    }
+
+    /**
+     * 为响应创建缓存条目，计算其新鲜期与收到时的年龄。
+     *
+     * @param filePath 缓存文件的路径
+     * @param head 响应头
+     * @param responseTime 收到响应的时间（毫秒）
+     * @return 缓存条目
+     */
+    public static CacheEntry newEntry(String filePath, HttpResponse head, long responseTime) {
+        HttpHeaders headers = head.getHeaders();
+        long date = parseDate(headers.get("Date"));
+        if (date == -1) {
+            date = responseTime;
+        }
+        long apparentAge = Math.max(0, responseTime - date);
+        long ageValue = parseAge(headers.get("Age"));
+        long initialAge = Math.max(apparentAge, ageValue);
+        long lastModified = parseDate(headers.get("Last-Modified"));
+        return new CacheEntry(filePath, lastModified == -1 ? null : head.getLastModified(), responseTime, initialAge,
+            freshnessLifetime(headers, date, lastModified), normalizeVary(head), 0);
+    }
+
+    /**
+     * 判断缓存能否不经验证直接返回给客户端。请求中的 no-cache（或 Pragma: no-cache）强制验证，
+     * 请求中的 max-age 可以缩短可接受的年龄。
+     *
+     * @param request 客户端请求
+     * @param cachedResponse 缓存的响应
+     * @param now 当前时间（毫秒）
+     * @return 如果缓存新鲜且请求允许直接使用则返回 true
+     */
+    public static boolean isFresh(HttpRequest request, CachedResponse cachedResponse, long now) {
+        CacheEntry entry = cachedResponse.getEntry();
+        if (entry == null) {
+            return false;
+        }
+        CacheControl cacheControl = CacheControl.parse(request.getHeaders());
+        if (cacheControl.noCache() || hasPragmaNoCache(request)) {
+            return false;
+        }
+        long lifetime = entry.lifetime();
+        if (cacheControl.maxAge() >= 0) {
+            lifetime = Math.min(lifetime, cacheControl.maxAge() * 1000);
+        }
+        return entry.age(now) < lifetime;
+    }
+
+    /**
+     * 判断过期的缓存能否先返回给客户端，再在后台向目标服务器验证（RFC 5861 stale-while-revalidate）。
+     *
+     * @param request 客户端请求
+     * @param cachedResponse 缓存的响应
+     * @param now 当前时间（毫秒）
+     * @return 如果过期时间仍在允许范围内则返回 true
+     */
+    public static boolean canServeStaleWhileRevalidate(HttpRequest request, CachedResponse cachedResponse, long now) {
+        CacheControl cacheControl = CacheControl.parse(cachedResponse.getHead().getHeaders());
+        return canServeStale(request, cachedResponse, cacheControl, now, cacheControl.staleWhileRevalidate(),
+            ProxyConfig.STALE_WHILE_REVALIDATE_SECONDS);
+    }
+
+    /**
+     * 判断目标服务器不可用或返回 5xx 时能否返回过期的缓存（RFC 5861 stale-if-error）。
+     *
+     * @param request 客户端请求
+     * @param cachedResponse 缓存的响应
+     * @param now 当前时间（毫秒）
+     * @return 如果过期时间仍在允许范围内则返回 true
+     */
+    public static boolean canServeStaleIfError(HttpRequest request, CachedResponse cachedResponse, long now) {
+        CacheControl cacheControl = CacheControl.parse(cachedResponse.getHead().getHeaders());
+        return canServeStale(request, cachedResponse, cacheControl, now, cacheControl.staleIfError(),
+            ProxyConfig.STALE_IF_ERROR_SECONDS);
+    }
+
+    /**
+     * 为验证缓存添加条件请求头：ETag 对应 If-None-Match，Last-Modified 对应 If-Modified-Since。
+     *
+     * @param request 客户端请求
+     * @param cachedHead 缓存的响应头
+     * @return 添加条件请求头后的请求
+     */
+    public static HttpRequest addConditionalHeaders(HttpRequest request, HttpResponse cachedHead) {
+        HttpHeaders headers = cachedHead.getHeaders();
+        String etag = headers.get("ETag");
+        if (etag != null) {
+            request = request.updateHeader("If-None-Match", etag);
+        }
+        String lastModified = headers.get("Last-Modified");
+        if (lastModified != null) {
+            request = request.updateHeader("If-Modified-Since", lastModified);
+        }
+        return request;
+    }
+
+    /**
+     * 用 304 响应中的头部更新缓存的响应头（RFC 9111 第 4.3.4 节），例如新的 Date、Cache-Control、Expires 与 ETag。
+     *
+     * @param cachedHead 缓存的响应头
+     * @param notModified 目标服务器的 304 响应
+     * @return 更新后的响应头
+     */
+    public static HttpResponse mergeNotModified(HttpResponse cachedHead, HttpResponse notModified) {
+        HttpResponse.Builder builder = new HttpResponse.Builder(cachedHead);
+        HttpHeaders headers = notModified.getHeaders();
+        Set<String> replaced = new HashSet<>();
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.getName(i).toLowerCase(Locale.ROOT);
+            if (NOT_MODIFIED_IGNORED_HEADERS.contains(name)) {
+                continue;
+            }
+            if (replaced.add(name)) {
+                builder.removeHeader(name); // 同名字段整体替换
+            }
+            builder.addHeader(headers.getName(i), headers.getValue(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 规范化响应的 Vary 头部：字段名转为小写、去重并排序，使字段顺序不同的 Vary 得到相同的结果。
+     *
+     * @param head 响应头
+     * @return 逗号分隔的字段名，Vary 中含有 * 时返回 "*"，没有 Vary 时返回 null
+     */
+    public static String normalizeVary(HttpResponse head) {
+        Set<String> names = new TreeSet<>();
+        for (String field : head.getHeaders().getAll("Vary")) {
+            for (String name : field.split(",")) {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("*")) {
+                    return "*";
+                }
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        return names.isEmpty() ? null : String.join(",", names);
+    }
+
+    /**
+     * 计算变体的缓存键：URI 之后依次附加 Vary 中每个字段在请求中的值，每个字段占一行。
+     *
+     * @param uri 请求的 URI
+     * @param vary 规范化后的 Vary 字段名，为 null 时缓存键就是 URI
+     * @param request 客户端请求
+     * @return 缓存键
+     */
+    public static String variantKey(String uri, String vary, HttpRequest request) {
+        if (vary == null) {
+            return uri;
+        }
+        StringBuilder key = new StringBuilder(uri);
+        for (String name : vary.split(",")) {
+            key.append('\n').append(name).append(':');
+            key.append(String.join(",", request.getHeaders().getAll(name)).trim());
+        }
+        return key.toString();
+    }
+
+    /**
+     * 从缓存键中取出 URI。
+     *
+     * @param key 缓存键
+     * @return 缓存键对应的 URI
+     */
+    public static String uriOf(String key) {
+        int newline = key.indexOf('\n');
+        return newline == -1 ? key : key.substring(0, newline);
+    }
+
+    /**
+     * 计算响应的新鲜期（RFC 9111 第 4.2.1、4.2.2 节）。响应带有 no-cache 时新鲜期为 0，每次使用前都要验证。
+     *
+     * @param headers 响应头
+     * @param date 响应的 Date（毫秒）
+     * @param lastModified 响应的 Last-Modified（毫秒），不存在时为 -1
+     * @return 新鲜期（毫秒）
+     */
+    private static long freshnessLifetime(HttpHeaders headers, long date, long lastModified) {
+        CacheControl cacheControl = CacheControl.parse(headers);
+        if (cacheControl.noCache()) {
+            return 0;
+        }
+        if (cacheControl.sMaxAge() >= 0) {
+            return cacheControl.sMaxAge() * 1000;
+        }
+        if (cacheControl.maxAge() >= 0) {
+            return cacheControl.maxAge() * 1000;
+        }
+        if (headers.contains("Expires")) {
+            long expires = parseDate(headers.get("Expires"));
+            return expires == -1 ? 0 : Math.max(0, expires - date); // 无效的 Expires（例如 "0"）表示已经过期
+        }
+        if (lastModified != -1 && lastModified < date) {
+            return Math.min((date - lastModified) / HEURISTIC_FRACTION, MAX_HEURISTIC_LIFETIME_MILLIS);
+        }
+        return 0;
+    }
+
+    /**
+     * 判断过期的缓存能否在指定的时间范围内继续使用。响应带有 must-revalidate 或 no-cache，
+     * 或者请求带有 no-cache、max-age 时不使用过期的缓存。
+     *
+     * @param request 客户端请求
+     * @param cachedResponse 缓存的响应
+     * @param cacheControl 缓存响应的 Cache-Control 指令
+     * @param now 当前时间（毫秒）
+     * @param directiveSeconds 响应中对应指令的值（秒），-1 表示没有该指令
+     * @param defaultSeconds 没有该指令时的默认值（秒）
+     * @return 如果可以使用过期的缓存则返回 true
+     */
+    private static boolean canServeStale(HttpRequest request, CachedResponse cachedResponse,
+        CacheControl cacheControl, long now, long directiveSeconds, long defaultSeconds) {
+        CacheEntry entry = cachedResponse.getEntry();
+        if (entry == null || cacheControl.mustRevalidate() || cacheControl.noCache()) {
+            return false;
+        }
+        CacheControl requestCacheControl = CacheControl.parse(request.getHeaders());
+        if (requestCacheControl.noCache() || requestCacheControl.maxAge() >= 0 || hasPragmaNoCache(request)) {
+            return false;
+        }
+        long staleMillis = entry.age(now) - entry.lifetime();
+        long windowSeconds = directiveSeconds >= 0 ? directiveSeconds : defaultSeconds;
+        return staleMillis >= 0 && staleMillis < windowSeconds * 1000;
+    }
+
+    /**
+     * 判断请求是否带有 HTTP/1.0 的 Pragma: no-cache。
+     *
+     * @param request 客户端请求
+     * @return 如果带有则返回 true
+     */
+    private static boolean hasPragmaNoCache(HttpRequest request) {
+        String pragma = request.getHeaders().get("Pragma");
+        return pragma != null && pragma.toLowerCase(Locale.ROOT).contains("no-cache");
+    }
+
+    /**
+     * 解析 HTTP 日期。
+     *
+     * @param value HTTP 日期字符串
+     * @return 毫秒时间戳，缺失或格式错误时返回 -1
+     */
+    private static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return DateUtils.parseHttpDateTime(value.trim()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析 Age 头部。
+     *
+     * @param value Age 头部的值（秒）
+     * @return 年龄（毫秒），缺失或格式错误时返回 0
+     */
+    private static long parseAge(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package cn.edu.hit.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import cn.edu.hit.core.HttpRequest;
+import cn.edu.hit.core.HttpResponse;
+
+/**
+ * 缓存写入器，在响应体流式转发给客户端的同时收集响应体，转发完成后提交到缓存。响应体超过上限时放弃缓存。
+ */
+public class CacheWriter extends OutputStream {
+
+    private final CacheManager cacheManager; // 所属缓存管理器
+    private final HttpRequest request; // 客户端请求，用于计算缓存键
+    private final HttpResponse head; // 响应头
+    private final int maxBodySize; // 允许缓存的最大响应体大小
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(); // 已收集的响应体
+    private boolean overflowed; // 响应体是否超过上限
+
+    /**
+     * 构造函数，初始化缓存写入器。
+     *
+     * @param cacheManager 所属缓存管理器
+     * @param request 客户端请求
+     * @param head 响应头
+     * @param maxBodySize 允许缓存的最大响应体大小
+     */
+    CacheWriter(CacheManager cacheManager, HttpRequest request, HttpResponse head, int maxBodySize) {
+        this.cacheManager = cacheManager;
+        this.request = request;
+        this.head = head;
+        this.maxBodySize = maxBodySize;
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (overflowed) {
+            return;
+        }
+        if (body.size() + len > maxBodySize) {
+            overflowed = true; // 超过上限，丢弃已收集的数据
+            body.reset();
+            return;
+        }
+        body.write(b, off, len);
+    }
+
+    /**
+     * 将收集到的完整响应提交到缓存。
+     *
+     * @return 如果响应已写入缓存则返回 true，响应体超过上限时返回 false
+     */
+    public boolean commit() {
+        if (overflowed) {
+            return false;
+        }
+        cacheManager.put(request, new HttpResponse.Builder(head).body(body.toByteArray()).build());
+        return true;
+    }
+}
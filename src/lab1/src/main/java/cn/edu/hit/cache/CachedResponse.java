@@ -0,0 +1,226 @@
+package cn.edu.hit.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.ZonedDateTime;
+
+import cn.edu.hit.core.HttpResponse;
+
+/**
+ * 一次缓存命中的结果：响应头，以及位于内存中或缓存文件中的响应体。
+ * <p>
+ * 来自缓存文件的响应持有打开的文件通道，即使缓存文件随后被替换，发送的仍是读取响应头时对应的响应体。
+ * 使用完毕后必须调用 {@link #close()}。
+ */
+public class CachedResponse implements Closeable {
+
+    private final HttpResponse head; // 响应头，不含响应体
+    private final byte[] body; // 内存中的响应体，来自缓存文件时为 null
+    private final FileChannel file; // 缓存文件通道，来自内存时为 null
+    private final long bodyOffset; // 响应体在缓存文件中的偏移
+    private final long bodyLength; // 响应体长度
+    private final String key; // 缓存键，尚未关联缓存条目时为 null
+    private final CacheEntry entry; // 对应的缓存条目，用于判断新鲜度，尚未关联时为 null
+
+    /**
+     * 构造函数，包装内存中的响应。
+     *
+     * @param head 响应头，不含响应体
+     * @param body 响应体
+     */
+    CachedResponse(HttpResponse head, byte[] body) {
+        this(head, body, null, 0, body.length, null, null);
+    }
+
+    /**
+     * 构造函数，包装缓存文件中的响应。
+     *
+     * @param head 响应头，不含响应体
+     * @param file 缓存文件通道
+     * @param bodyOffset 响应体在缓存文件中的偏移
+     * @param bodyLength 响应体长度
+     */
+    CachedResponse(HttpResponse head, FileChannel file, long bodyOffset, long bodyLength) {
+        this(head, null, file, bodyOffset, bodyLength, null, null);
+    }
+
+    /**
+     * 构造函数。
+     *
+     * @param head 响应头，不含响应体
+     * @param body 内存中的响应体
+     * @param file 缓存文件通道
+     * @param bodyOffset 响应体在缓存文件中的偏移
+     * @param bodyLength 响应体长度
+     * @param key 缓存键
+     * @param entry 对应的缓存条目
+     */
+    private CachedResponse(HttpResponse head, byte[] body, FileChannel file, long bodyOffset, long bodyLength,
+        String key, CacheEntry entry) {
+        this.head = head;
+        this.body = body;
+        this.file = file;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.key = key;
+        this.entry = entry;
+    }
+
+    /**
+     * 关联缓存键与缓存条目。内存缓存中的响应被多个请求共享，因此返回共享同一响应体的新对象。
+     *
+     * @param key 缓存键
+     * @param entry 缓存条目
+     * @return 关联了缓存条目的缓存响应
+     */
+    CachedResponse withEntry(String key, CacheEntry entry) {
+        return new CachedResponse(head, body, file, bodyOffset, bodyLength, key, entry);
+    }
+
+    /**
+     * 替换响应头，例如验证成功后用 304 响应中的头部更新缓存的响应头。返回共享同一响应体的新对象。
+     *
+     * @param head 新的响应头
+     * @param entry 新的缓存条目
+     * @return 替换响应头后的缓存响应
+     */
+    CachedResponse withHead(HttpResponse head, CacheEntry entry) {
+        return new CachedResponse(head, body, file, bodyOffset, bodyLength, key, entry);
+    }
+
+    /**
+     * 获取响应头。
+     *
+     * @return 响应头，不含响应体
+     */
+    public HttpResponse getHead() {
+        return head;
+    }
+
+    /**
+     * 获取 Last-Modified 时间。
+     *
+     * @return Last-Modified 时间
+     */
+    public ZonedDateTime getLastModified() {
+        return head.getLastModified();
+    }
+
+    /**
+     * 获取缓存键。
+     *
+     * @return 缓存键
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * 获取对应的缓存条目。
+     *
+     * @return 缓存条目
+     */
+    CacheEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * 获取缓存响应在指定时刻的年龄，用于 Age 头部。
+     *
+     * @param now 当前时间（毫秒）
+     * @return 年龄（秒）
+     */
+    public long getAge(long now) {
+        return entry != null ? entry.age(now) / 1000 : 0;
+    }
+
+    /**
+     * 获取响应体长度。
+     *
+     * @return 响应体长度
+     */
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * 判断响应体是否位于内存中。
+     *
+     * @return 如果响应体位于内存中则返回 true
+     */
+    public boolean isInMemory() {
+        return body != null;
+    }
+
+    /**
+     * 发送响应体。响应体位于缓存文件中时通过 {@link FileChannel#transferTo} 直接从文件发送到通道，不经过 Java 堆。
+     *
+     * @param out 输出流
+     * @param channel 输出流对应的通道，可以为 null（此时通过输出流发送）
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public void writeBody(OutputStream out, WritableByteChannel channel) throws IOException {
+        if (body != null) {
+            out.write(body);
+            out.flush();
+            return;
+        }
+        out.flush(); // 先写出输出流中已缓冲的响应头
+        WritableByteChannel target = channel != null ? channel : Channels.newChannel(out);
+        long position = bodyOffset;
+        long end = bodyOffset + bodyLength;
+        while (position < end) {
+            long transferred = file.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("缓存文件已被截断");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * 读取完整的响应体并构造带有响应体的响应。
+     *
+     * @return 完整的响应
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public HttpResponse toHttpResponse() throws IOException {
+        return new HttpResponse.Builder(head).body(readBody()).build();
+    }
+
+    /**
+     * 读取完整的响应体。
+     *
+     * @return 响应体
+     * @throws IOException 如果发生 I/O 错误
+     */
+    byte[] readBody() throws IOException {
+        if (body != null) {
+            return body;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int)bodyLength);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, bodyOffset + buffer.position()) == -1) {
+                throw new IOException("缓存文件已被截断");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 关闭缓存文件通道。
+     *
+     * @throws IOException 如果发生 I/O 错误
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package cn.edu.hit.cache;
+
+/**
+ * 访问频率的近似统计（Count-Min Sketch），供 {@link MemoryCache} 决定是否接纳新条目。
+ * <p>
+ * 每个计数器占 4 位，16 个计数器打包在一个 long 中，每个键对应 4 个计数器，取最小值作为频率估计。
+ * 累计增加次数达到采样上限后所有计数器减半，使频率随时间衰减，过去的热点不会永久占据缓存。
+ * 该类不是线程安全的，由调用方负责加锁。
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L}; // 4 个哈希函数的种子
+    private static final long RESET_MASK = 0x7777777777777777L; // 计数器减半后清除每个计数器最高位的掩码
+    private static final long ONE_MASK = 0x1111111111111111L; // 取每个计数器最低位的掩码
+    private static final int MIN_TABLE_SIZE = 64; // 计数器表的最小长度
+
+    private final long[] table; // 计数器表
+    private final int tableMask; // 计数器表长度减一，用于取模
+    private final int sampleSize; // 采样上限，达到后计数器减半
+    private int size; // 自上次减半以来的增加次数
+
+    /**
+     * 构造函数，按预计的条目数分配计数器表。
+     *
+     * @param expectedEntries 预计缓存的条目数
+     */
+    FrequencySketch(int expectedEntries) {
+        int tableSize = Integer.highestOneBit(Math.max(expectedEntries, MIN_TABLE_SIZE) - 1) << 1;
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    /**
+     * 获取键的访问频率估计值。
+     *
+     * @param keyHash 键的哈希值
+     * @return 频率估计值（0 到 15）
+     */
+    int frequency(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2; // 选择每个 long 中的 4 个计数器之一
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次对键的访问。
+     *
+     * @param keyHash 键的哈希值
+     */
+    void increment(int keyHash) {
+        int hash = spread(keyHash);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 将指定位置的计数器加一，计数器已饱和时不变。
+     *
+     * @param index 计数器表中的位置
+     * @param counter long 中的计数器序号（0 到 15）
+     * @return 如果计数器增加了则返回 true
+     */
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 将所有计数器减半，实现频率的衰减。
+     */
+    private void reset() {
+        int odd = 0; // 减半时被舍去的奇数计数器个数
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    /**
+     * 计算第 i 个哈希函数对应的计数器表位置。
+     *
+     * @param hash 打散后的哈希值
+     * @param i 哈希函数序号
+     * @return 计数器表中的位置
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int)h & tableMask;
+    }
+
+    /**
+     * 打散哈希值，减少 String.hashCode 低位分布不均带来的冲突。
+     *
+     * @param x 原始哈希值
+     * @return 打散后的哈希值
+     */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
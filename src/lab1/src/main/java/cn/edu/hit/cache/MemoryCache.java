@@ -0,0 +1,335 @@
+package cn.edu.hit.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 内存中的响应缓存（一级缓存），位于磁盘缓存之前，按字节数限制容量，采用 W-TinyLFU 策略接纳与淘汰条目。
+ * <p>
+ * 新条目先进入容量约为 1% 的窗口区（LRU），从窗口区淘汰出的候选条目只有在访问频率高于主区（分段 LRU）的淘汰对象时才会被接纳，
+ * 否则直接丢弃。主区分为试用段与保护段，试用段中的条目再次被访问后晋升到保护段。访问频率由 {@link FrequencySketch} 近似统计。
+ * 这样一次性访问的大量响应不会把反复访问的热点响应挤出内存。
+ */
+@Slf4j
+public class MemoryCache {
+
+    private static final int WINDOW_PERCENT = 1; // 窗口区占总容量的百分比
+    private static final int PROTECTED_PERCENT = 80; // 保护段占主区容量的百分比
+    private static final int AVERAGE_ENTRY_BYTES = 16 * 1024; // 估算条目数时假设的平均响应大小
+
+    private final Map<String, Node> nodes = new HashMap<>(); // 键到节点的映射
+    private final Queue window = new Queue(); // 窗口区
+    private final Queue probation = new Queue(); // 主区试用段
+    private final Queue protectedQueue = new Queue(); // 主区保护段
+    private final FrequencySketch sketch; // 访问频率统计
+    private final ReentrantLock lock = new ReentrantLock(); // 保护以上所有结构（不使用 synchronized，避免固定虚拟线程）
+    private final long maximumBytes; // 总容量（字节）
+    private final long windowMaximumBytes; // 窗口区容量（字节）
+    private final long protectedMaximumBytes; // 保护段容量（字节）
+    private final LongAdder hits = new LongAdder(); // 命中次数
+    private final LongAdder misses = new LongAdder(); // 未命中次数
+    private final LongAdder evictions = new LongAdder(); // 淘汰或拒绝接纳的条目数
+    private volatile long weightedSize; // 当前占用的字节数
+
+    /**
+     * 构造函数，初始化内存缓存。
+     *
+     * @param maximumBytes 总容量（字节）
+     */
+    public MemoryCache(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+        this.windowMaximumBytes = Math.max(maximumBytes * WINDOW_PERCENT / 100, 1);
+        this.protectedMaximumBytes = (maximumBytes - windowMaximumBytes) * PROTECTED_PERCENT / 100;
+        this.sketch = new FrequencySketch((int)Math.min(maximumBytes / AVERAGE_ENTRY_BYTES, 1 << 20));
+        log.info("初始化内存缓存，容量: {} 字节", maximumBytes);
+    }
+
+    /**
+     * 获取缓存的响应。
+     *
+     * @param key 缓存键
+     * @return 缓存的响应，未命中则返回 null
+     */
+    public CachedResponse get(String key) {
+        lock.lock();
+        try {
+            sketch.increment(key.hashCode()); // 未命中的访问同样计入频率，再次请求时更容易被接纳
+            Node node = nodes.get(key);
+            if (node == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            onAccess(node);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放入响应。超过窗口区与试用段容量之和的单个响应不会进入内存缓存，只保存在磁盘上。
+     *
+     * @param key 缓存键
+     * @param value 响应，响应体必须位于内存中
+     */
+    public void put(String key, CachedResponse value) {
+        int weight = weigh(key, value);
+        lock.lock();
+        try {
+            Node node = nodes.get(key);
+            if (weight > maximumBytes - protectedMaximumBytes) {
+                // 过大的响应会冲掉整个窗口区和试用段，不放入内存
+                if (node != null) {
+                    remove(node);
+                }
+                return;
+            }
+            if (node != null) {
+                node.queue.weight += weight - node.weight;
+                weightedSize += weight - node.weight;
+                node.value = value;
+                node.weight = weight;
+                onAccess(node);
+            } else {
+                node = new Node(key, value, weight);
+                nodes.put(key, node);
+                window.addLast(node);
+                weightedSize += weight;
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 移除缓存的响应。
+     *
+     * @param key 缓存键
+     */
+    public void invalidate(String key) {
+        lock.lock();
+        try {
+            Node node = nodes.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 处理对已缓存条目的访问：窗口区和保护段内移到队尾，试用段中的条目晋升到保护段。
+     *
+     * @param node 被访问的节点
+     */
+    private void onAccess(Node node) {
+        if (node.queue == probation) {
+            probation.remove(node);
+            protectedQueue.addLast(node);
+            // 保护段超出容量时，最久未访问的条目降级回试用段
+            while (protectedQueue.weight > protectedMaximumBytes && protectedQueue.head != node) {
+                Node demoted = protectedQueue.head;
+                protectedQueue.remove(demoted);
+                probation.addLast(demoted);
+            }
+        } else {
+            node.queue.moveToLast(node);
+        }
+    }
+
+    /**
+     * 在窗口区超出容量时将其中最久未访问的条目移入主区，并在总容量超出时淘汰条目。
+     */
+    private void evict() {
+        while (window.weight > windowMaximumBytes && window.head != null) {
+            Node candidate = window.head;
+            window.remove(candidate);
+            probation.addLast(candidate);
+            admit(candidate);
+        }
+        // 窗口区本身即可能超出总容量（例如容量极小时），此时按 LRU 淘汰
+        while (weightedSize > maximumBytes && window.head != null) {
+            evictNode(window.head);
+        }
+    }
+
+    /**
+     * 决定刚进入试用段的候选条目的去留：主区容量不足时，候选条目与主区的淘汰对象比较访问频率，频率低者被淘汰。
+     *
+     * @param candidate 候选节点
+     */
+    private void admit(Node candidate) {
+        int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+        while (weightedSize > maximumBytes) {
+            Node victim = probation.head != candidate ? probation.head : protectedQueue.head;
+            if (victim == null) {
+                evictNode(candidate);
+                return;
+            }
+            if (candidateFrequency > sketch.frequency(victim.key.hashCode())) {
+                evictNode(victim);
+            } else {
+                evictNode(candidate);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 淘汰节点并计数。
+     *
+     * @param node 被淘汰的节点
+     */
+    private void evictNode(Node node) {
+        remove(node);
+        evictions.increment();
+    }
+
+    /**
+     * 从所在队列和映射中移除节点。
+     *
+     * @param node 要移除的节点
+     */
+    private void remove(Node node) {
+        node.queue.remove(node);
+        nodes.remove(node.key);
+        weightedSize -= node.weight;
+    }
+
+    /**
+     * 估算响应占用的字节数：响应体长度加上头部及键的长度。
+     *
+     * @param key 缓存键
+     * @param value 响应
+     * @return 估算的字节数
+     */
+    private static int weigh(String key, CachedResponse value) {
+        return key.length() + value.getHead().getHeaders().toString().length() + (int)value.getBodyLength();
+    }
+
+    /**
+     * 获取命中次数。
+     *
+     * @return 命中次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 获取未命中次数。
+     *
+     * @return 未命中次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 获取淘汰或拒绝接纳的条目数。
+     *
+     * @return 淘汰的条目数
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 获取当前占用的字节数。
+     *
+     * @return 当前占用的字节数
+     */
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * 获取总容量。
+     *
+     * @return 总容量（字节）
+     */
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * 返回缓存统计信息的字符串表示形式。
+     *
+     * @return 统计信息
+     */
+    @Override
+    public String toString() {
+        return String.format("命中: %d, 未命中: %d, 淘汰: %d, 占用: %d/%d 字节", getHits(), getMisses(), getEvictions(),
+            getWeightedSize(), getMaximumBytes());
+    }
+
+    /**
+     * 缓存条目节点，同时是所在队列的双向链表节点。
+     */
+    private static class Node {
+        private final String key; // 缓存键
+        private CachedResponse value; // 缓存的响应
+        private int weight; // 占用的字节数
+        private Queue queue; // 所在队列
+        private Node prev; // 前一个节点
+        private Node next; // 后一个节点
+
+        private Node(String key, CachedResponse value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，队首为最久未访问的节点，同时记录队列中条目的总字节数。
+     */
+    private static class Queue {
+        private Node head; // 队首（最久未访问）
+        private Node tail; // 队尾（最近访问）
+        private long weight; // 队列中条目的总字节数
+
+        private void addLast(Node node) {
+            node.queue = this;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        private void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        private void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+}
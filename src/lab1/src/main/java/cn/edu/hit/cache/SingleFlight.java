@@ -0,0 +1,138 @@
+package cn.edu.hit.cache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求合并（single-flight）：同一个键同时只有一个调用方（领导者）真正执行操作，其余调用方（跟随者）等待并共享其结果。
+ * 用于避免大量客户端同时请求同一个未缓存或需要重新验证的资源时，每个请求都访问一次目标服务器。
+ *
+ * @param <K> 键的类型
+ * @param <V> 结果的类型
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>(); // 进行中的调用
+    private final LongAdder leaders = new LongAdder(); // 领导者次数
+    private final LongAdder followers = new LongAdder(); // 跟随者次数（被合并的调用）
+
+    /**
+     * 开始一次调用。如果该键没有进行中的调用，则调用方成为领导者，必须在操作完成后调用 {@link Call#complete}，
+     * 否则调用方成为跟随者，通过 {@link Call#await} 等待领导者的结果。
+     *
+     * @param key 键
+     * @return 本次调用，使用完毕后必须关闭
+     */
+    public Call begin(K key) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            followers.increment();
+            return new Call(key, existing, false);
+        }
+        leaders.increment();
+        return new Call(key, future, true);
+    }
+
+    /**
+     * 获取领导者次数。
+     *
+     * @return 领导者次数
+     */
+    public long getLeaders() {
+        return leaders.sum();
+    }
+
+    /**
+     * 获取跟随者次数，即被合并而没有单独执行的调用数。
+     *
+     * @return 跟随者次数
+     */
+    public long getFollowers() {
+        return followers.sum();
+    }
+
+    /**
+     * 返回统计信息的字符串表示形式。
+     *
+     * @return 统计信息
+     */
+    @Override
+    public String toString() {
+        return String.format("领导者: %d, 跟随者: %d, 进行中: %d", getLeaders(), getFollowers(), inFlight.size());
+    }
+
+    /**
+     * 一次调用。领导者关闭时如果尚未给出结果，则以 null 作为结果结束调用，跟随者随后应自行执行操作。
+     */
+    public class Call implements AutoCloseable {
+
+        private final K key; // 键
+        private final CompletableFuture<V> future; // 领导者的结果
+        private final boolean leader; // 是否为领导者
+
+        /**
+         * 构造函数。
+         *
+         * @param key 键
+         * @param future 领导者的结果
+         * @param leader 是否为领导者
+         */
+        private Call(K key, CompletableFuture<V> future, boolean leader) {
+            this.key = key;
+            this.future = future;
+            this.leader = leader;
+        }
+
+        /**
+         * 判断调用方是否为领导者。
+         *
+         * @return 如果是领导者则返回 true
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * 领导者给出结果并结束调用，唤醒所有跟随者。之后到达的调用方将成为新的领导者。
+         *
+         * @param value 结果
+         */
+        public void complete(V value) {
+            if (leader && !future.isDone()) {
+                inFlight.remove(key, future);
+                future.complete(value);
+            }
+        }
+
+        /**
+         * 跟随者等待领导者的结果。
+         *
+         * @param timeoutMillis 最长等待时间（毫秒）
+         * @return 领导者的结果，超时、被中断或领导者失败时返回 null
+         */
+        public V await(long timeoutMillis) {
+            try {
+                return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | TimeoutException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 结束调用。领导者尚未给出结果时以 null 结束，避免跟随者一直等待。
+         */
+        @Override
+        public void close() {
+            complete(null);
+        }
+    }
+}
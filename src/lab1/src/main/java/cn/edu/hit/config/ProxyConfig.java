@@ -0,0 +1,100 @@
+package cn.edu.hit.config;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class ProxyConfig {
+
+    // 是否以流式方式转发响应体（-Dproxy.streaming=false 时先完整读取响应体再转发）
+    public static final boolean STREAMING_RELAY = Boolean.parseBoolean(System.getProperty("proxy.streaming", "true"));
+
+    // 是否对不可缓存的固定长度响应体使用通道间直接传输（-Dproxy.splice=false 时使用流式转发）
+    public static final boolean ZERO_COPY_SPLICE = Boolean.parseBoolean(System.getProperty("proxy.splice", "true"));
+
+    // 等待目标服务器数据的超时（毫秒），读取响应头与响应体时都生效，超时后按目标服务器不可用处理（-Dproxy.upstream.readTimeout）
+    public static final int UPSTREAM_READ_TIMEOUT_MILLIS = Integer.getInteger("proxy.upstream.readTimeout", 30000);
+
+    // 目标服务器连接池中每个目标服务器最多保留的空闲连接数（-Dproxy.upstream.maxIdlePerHost）
+    public static final int UPSTREAM_MAX_IDLE_PER_HOST = Integer.getInteger("proxy.upstream.maxIdlePerHost", 8);
+
+    // 目标服务器连接池中空闲连接的超时时间（毫秒），超时的连接被关闭（-Dproxy.upstream.idleTimeout）
+    public static final long UPSTREAM_IDLE_TIMEOUT_MILLIS = Long.getLong("proxy.upstream.idleTimeout", 30000);
+
+    // 通道间直接传输使用的直接缓冲区大小
+    public static final int SPLICE_BUFFER_SIZE = 64 * 1024;
+
+    // 每个缓冲区池最多保留的空闲缓冲区数量，超出的缓冲区归还时直接丢弃（-Dproxy.buffers.maxIdle）
+    public static final int BUFFER_POOL_MAX_IDLE = Integer.getInteger("proxy.buffers.maxIdle", 256);
+
+    // 内存缓存（一级缓存）的容量，单位为字节（-Dproxy.cache.memory=0 时关闭内存缓存）
+    public static final long MEMORY_CACHE_BYTES = Long.getLong("proxy.cache.memory", 64L * 1024 * 1024);
+
+    // 是否合并同一 URI 的并发请求（-Dproxy.coalesce=false 时每个请求各自访问目标服务器）
+    public static final boolean REQUEST_COALESCING = Boolean.parseBoolean(System.getProperty("proxy.coalesce", "true"));
+
+    // 被合并的请求等待领导者结果的最长时间（毫秒）
+    public static final long COALESCING_TIMEOUT_MILLIS = 30000;
+
+    // 缓存过期后仍可直接返回、同时在后台重新验证的时间（秒），响应中的 stale-while-revalidate 优先
+    public static final long STALE_WHILE_REVALIDATE_SECONDS = Long.getLong("proxy.stale.revalidate", 30);
+
+    // 目标服务器不可用或返回 5xx 时仍可返回过期缓存的时间（秒），响应中的 stale-if-error 优先
+    public static final long STALE_IF_ERROR_SECONDS = Long.getLong("proxy.stale.error", 24 * 60 * 60);
+
+    // 后台重新验证缓存的线程数
+    public static final int REFRESH_THREADS = 2;
+
+    // 等待执行的后台重新验证任务的最大数量，超出时放弃本次后台验证
+    public static final int REFRESH_QUEUE_SIZE = 256;
+
+    // 是否在后台线程写入缓存文件（-Dproxy.cache.writeBehind=false 时在请求线程中同步写入）
+    public static final boolean CACHE_WRITE_BEHIND =
+        Boolean.parseBoolean(System.getProperty("proxy.cache.writeBehind", "true"));
+
+    // 后台写入缓存文件的线程数
+    public static final int CACHE_WRITER_THREADS = 2;
+
+    // 等待写入的缓存文件的最大数量，队列已满时由请求线程自行写入（反压）
+    public static final int CACHE_WRITE_QUEUE_SIZE = 64;
+
+    // 磁盘缓存的容量上限，单位为字节（-Dproxy.cache.maxBytes）
+    public static final long CACHE_MAX_BYTES = Long.getLong("proxy.cache.maxBytes", 1024L * 1024 * 1024);
+
+    // 磁盘缓存的最大条目数（-Dproxy.cache.maxEntries）
+    public static final int CACHE_MAX_ENTRIES = Integer.getInteger("proxy.cache.maxEntries", 100000);
+
+    // 缓存清理任务的执行间隔（毫秒）
+    public static final long CACHE_JANITOR_INTERVAL_MILLIS = 1000;
+
+    // 缓存清理任务每次执行的最长时间（毫秒），未完成的工作留到下次继续
+    public static final long CACHE_JANITOR_SLICE_MILLIS = 5;
+
+    // 禁止访问的网站规则文件，每行一条域名规则（-Dproxy.filter.sites=<文件路径>，修改后自动重新加载）
+    public static final String BLOCKED_SITES_FILE = System.getProperty("proxy.filter.sites");
+
+    // 过滤规则文件，包含 site、user、redirect 规则，修改后自动重新加载（-Dproxy.filter.rules=<文件路径>）
+    public static final String FILTER_RULES_FILE = System.getProperty("proxy.filter.rules");
+
+    // 允许 CONNECT 隧道连接的目标端口，逗号分隔（-Dproxy.tunnel.ports=443,8443）
+    public static final Set<Integer> TUNNEL_PORTS = Arrays.stream(System.getProperty("proxy.tunnel.ports", "443")
+        .split(",")).map(String::trim).map(Integer::valueOf).collect(Collectors.toUnmodifiableSet());
+
+    // CONNECT 隧道每个方向的缓冲区大小，每条隧道占用两个缓冲区
+    public static final int TUNNEL_BUFFER_SIZE = 16 * 1024;
+
+    // CONNECT 隧道两个方向都没有数据传输时的空闲超时（毫秒）
+    public static final long TUNNEL_IDLE_TIMEOUT_MILLIS = Long.getLong("proxy.tunnel.idleTimeout", 300000);
+
+    // NIO 模式下执行阻塞操作（读取磁盘缓存、解析目标服务器地址）的线程数，事件循环线程本身不执行阻塞操作（-Dproxy.nio.blockingThreads）
+    public static final int NIO_BLOCKING_THREADS = Integer.getInteger("proxy.nio.blockingThreads", 8);
+
+    // NIO 模式下等待执行的阻塞操作的最大数量，超出时向客户端返回 503
+    public static final int NIO_BLOCKING_QUEUE_SIZE = 1024;
+
+    // NIO 模式下请求体的最大长度（字节），请求体在事件循环中整体缓冲，超出时返回 413 并关闭连接（-Dproxy.nio.maxRequestBody）
+    public static final long NIO_MAX_REQUEST_BODY_BYTES = Long.getLong("proxy.nio.maxRequestBody", 16L * 1024 * 1024);
+
+    // 本机管理端口，在 /metrics 上以 Prometheus 文本格式提供运行指标（-Dproxy.metrics.port=0 时不启动）
+    public static final int METRICS_PORT = Integer.getInteger("proxy.metrics.port", 20001);
+}
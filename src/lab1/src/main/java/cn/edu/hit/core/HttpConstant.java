@@ -19,4 +19,10 @@ public class HttpConstant {
 
     // 默认连接超时时间（毫秒）
     public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+
+    // 默认持久连接空闲超时时间（毫秒）
+    public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 15000;
+
+    // 默认单个持久连接上允许处理的最大请求数
+    public static final int DEFAULT_KEEP_ALIVE_MAX_REQUESTS = 100;
 }
@@ -0,0 +1,310 @@
+package cn.edu.hit.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * HTTP 头部字段的集合，由 {@link HttpRequest} 和 {@link HttpResponse} 共用。
+ * <p>
+ * 头部字段以名称数组和值数组按插入顺序紧凑存储，名称查找不区分大小写，同名字段（例如 Set-Cookie）可以出现多次。
+ * 常见的头部名称会被规范化为同一个字符串常量，查找时通常只需比较引用。
+ */
+public class HttpHeaders {
+
+    private static final int INITIAL_CAPACITY = 16; // 初始容量，足以容纳大多数消息的头部
+    private static final String[] COMMON_NAMES = {"Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language",
+        "Accept-Ranges", "Age", "Authorization", "Cache-Control", "Connection", "Content-Disposition",
+        "Content-Encoding", "Content-Language", "Content-Length", "Content-Location", "Content-Range",
+        "Content-Type", "Cookie", "Date", "ETag", "Expires", "Host", "If-Match", "If-Modified-Since",
+        "If-None-Match", "If-Range", "If-Unmodified-Since", "Keep-Alive", "Last-Modified", "Location", "Origin",
+        "Pragma", "Proxy-Authenticate", "Proxy-Authorization", "Proxy-Connection", "Range", "Referer", "Server",
+        "Set-Cookie", "TE", "Trailer", "Transfer-Encoding", "Upgrade", "Upgrade-Insecure-Requests", "User-Agent",
+        "Vary", "Via", "WWW-Authenticate", "X-Forwarded-For"}; // 常见的头部名称
+    private static final Map<String, String> CANONICAL_NAMES = new HashMap<>(); // 常见头部名称（原样及小写）到规范名称的映射
+
+    static {
+        for (String name : COMMON_NAMES) {
+            CANONICAL_NAMES.put(name, name);
+            CANONICAL_NAMES.put(name.toLowerCase(Locale.ROOT), name);
+        }
+    }
+
+    private String[] names; // 头部名称
+    private String[] values; // 头部值，与名称一一对应
+    private int size; // 头部字段数量
+    private boolean readOnly; // 是否只读
+
+    /**
+     * 构造一个空的头部集合。
+     */
+    public HttpHeaders() {
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * 复制一个头部集合，得到的副本可以修改。
+     *
+     * @param other 要复制的头部集合
+     */
+    public HttpHeaders(HttpHeaders other) {
+        int capacity = Math.max(other.size, INITIAL_CAPACITY);
+        this.names = Arrays.copyOf(other.names, capacity);
+        this.values = Arrays.copyOf(other.values, capacity);
+        this.size = other.size;
+    }
+
+    /**
+     * 获取头部名称的规范形式。常见的头部名称无论大小写都返回同一个字符串常量，其余名称原样返回。
+     *
+     * @param name 头部名称
+     * @return 规范化后的头部名称
+     */
+    public static String canonicalName(String name) {
+        String canonical = CANONICAL_NAMES.get(name);
+        if (canonical == null) {
+            canonical = CANONICAL_NAMES.get(name.toLowerCase(Locale.ROOT));
+        }
+        return canonical != null ? canonical : name;
+    }
+
+    /**
+     * 获取指定名称的第一个头部值。
+     *
+     * @param name 头部名称（不区分大小写）
+     * @return 头部值，不存在则返回 null
+     */
+    public String get(String name) {
+        int index = indexOf(name, 0);
+        return index == -1 ? null : values[index];
+    }
+
+    /**
+     * 获取指定名称的第一个头部值，不存在时返回默认值。
+     *
+     * @param name 头部名称（不区分大小写）
+     * @param defaultValue 默认值
+     * @return 头部值或默认值
+     */
+    public String getOrDefault(String name, String defaultValue) {
+        String value = get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * 获取指定名称的所有头部值，按出现顺序排列。
+     *
+     * @param name 头部名称（不区分大小写）
+     * @return 头部值列表，不存在则返回空列表
+     */
+    public List<String> getAll(String name) {
+        List<String> result = new ArrayList<>(1);
+        for (int index = indexOf(name, 0); index != -1; index = indexOf(name, index + 1)) {
+            result.add(values[index]);
+        }
+        return result;
+    }
+
+    /**
+     * 判断是否存在指定名称的头部。
+     *
+     * @param name 头部名称（不区分大小写）
+     * @return 如果存在则返回 true
+     */
+    public boolean contains(String name) {
+        return indexOf(name, 0) != -1;
+    }
+
+    /**
+     * 设置头部，替换所有同名的头部字段。替换时保留第一个同名字段的位置，不存在时追加到末尾。
+     *
+     * @param name 头部名称
+     * @param value 头部值
+     * @return 当前头部集合
+     */
+    public HttpHeaders set(String name, String value) {
+        checkWritable();
+        int index = indexOf(name, 0);
+        if (index == -1) {
+            return add(name, value);
+        }
+        values[index] = value;
+        removeFrom(name, index + 1);
+        return this;
+    }
+
+    /**
+     * 追加一个头部字段，不影响已有的同名字段。
+     *
+     * @param name 头部名称
+     * @param value 头部值
+     * @return 当前头部集合
+     */
+    public HttpHeaders add(String name, String value) {
+        checkWritable();
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = canonicalName(name);
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    /**
+     * 追加另一个头部集合中的所有头部字段。
+     *
+     * @param other 另一个头部集合
+     * @return 当前头部集合
+     */
+    public HttpHeaders addAll(HttpHeaders other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.names[i], other.values[i]);
+        }
+        return this;
+    }
+
+    /**
+     * 移除指定名称的所有头部字段。
+     *
+     * @param name 头部名称（不区分大小写）
+     * @return 当前头部集合
+     */
+    public HttpHeaders remove(String name) {
+        checkWritable();
+        removeFrom(name, 0);
+        return this;
+    }
+
+    /**
+     * 获取头部字段的数量（同名字段分别计数）。
+     *
+     * @return 头部字段的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 获取指定位置的头部名称。
+     *
+     * @param index 位置（0 到 size() - 1）
+     * @return 头部名称
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * 获取指定位置的头部值。
+     *
+     * @param index 位置（0 到 size() - 1）
+     * @return 头部值
+     */
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * 判断头部集合是否为空。
+     *
+     * @return 如果没有任何头部字段则返回 true
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 按插入顺序遍历所有头部字段，同名字段会被分别遍历。
+     *
+     * @param action 对每个头部字段执行的操作
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(names[i], values[i]);
+        }
+    }
+
+    /**
+     * 获取当前头部集合的只读副本。
+     *
+     * @return 只读副本
+     */
+    public HttpHeaders toReadOnly() {
+        HttpHeaders copy = new HttpHeaders(this);
+        copy.readOnly = true;
+        return copy;
+    }
+
+    /**
+     * 返回头部字段的字符串表示形式，每个字段一行，以 \r\n 结尾。
+     *
+     * @return 头部字段的字符串表示形式
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        forEach((name, value) -> sb.append(name).append(": ").append(value).append("\r\n"));
+        return sb.toString();
+    }
+
+    /**
+     * 从指定位置开始查找指定名称的头部字段。
+     *
+     * @param name 头部名称（不区分大小写）
+     * @param from 起始位置
+     * @return 头部字段的位置，未找到则返回 -1
+     */
+    private int indexOf(String name, int from) {
+        String canonical = canonicalName(name);
+        for (int i = from; i < size; i++) {
+            String current = names[i];
+            // 常见头部名称已被规范化，通常引用相等即可命中
+            if (current == canonical || current.equalsIgnoreCase(canonical)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从指定位置开始移除所有指定名称的头部字段，保持其余字段的顺序。
+     *
+     * @param name 头部名称（不区分大小写）
+     * @param from 起始位置
+     */
+    private void removeFrom(String name, int from) {
+        int index = indexOf(name, from);
+        if (index == -1) {
+            return;
+        }
+        int kept = index;
+        for (int i = index + 1; i < size; i++) {
+            if (!names[i].equalsIgnoreCase(name)) {
+                names[kept] = names[i];
+                values[kept] = values[i];
+                kept++;
+            }
+        }
+        Arrays.fill(names, kept, size, null);
+        Arrays.fill(values, kept, size, null);
+        size = kept;
+    }
+
+    /**
+     * 检查头部集合是否可以修改。
+     *
+     * @throws UnsupportedOperationException 如果头部集合是只读的
+     */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("头部集合是只读的");
+        }
+    }
+}
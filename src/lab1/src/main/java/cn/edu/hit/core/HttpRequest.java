@@ -1,9 +1,6 @@
 package cn.edu.hit.core;
 
 import java.net.URI;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 表示一个 HTTP 请求。
@@ -16,8 +13,8 @@ public class HttpRequest {
     private final URI uri;
     // HTTP 版本，例如 HTTP/1.1
     private final String version;
-    // 请求头的映射
-    private final Map<String, String> headers;
+    // 请求头集合
+    private final HttpHeaders headers;
     // 请求体的字节数组
     private final byte[] body;
 
@@ -29,7 +26,7 @@ public class HttpRequest {
     private HttpRequest(Builder builder) {
         this.method = builder.method;
         this.uri = builder.uri;
-        this.headers = builder.headers;
+        this.headers = builder.headers.toReadOnly();
         this.body = builder.body;
         this.version = builder.version;
     }
@@ -97,12 +94,12 @@ public class HttpRequest {
     }
 
     /**
-     * 获取请求头的不可修改映射。
+     * 获取请求头。
      *
-     * @return 请求头的不可修改映射
+     * @return 只读的请求头集合
      */
-    public Map<String, String> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+    public HttpHeaders getHeaders() {
+        return headers;
     }
 
     /**
@@ -164,7 +161,7 @@ public class HttpRequest {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(method).append(" ").append(uri.toString()).append(" ").append(version).append("\r\n");
-        headers.forEach((key, value) -> sb.append(key).append(": ").append(value).append("\r\n"));
+        sb.append(headers);
         // 添加空行，表示请求头结束
         sb.append("\r\n");
         return sb.toString();
@@ -174,8 +171,8 @@ public class HttpRequest {
      * 用于构建 HttpRequest 对象的 Builder 类。
      */
     public static class Builder {
-        // 请求头的映射
-        private final Map<String, String> headers = new HashMap<>();
+        // 请求头集合
+        private final HttpHeaders headers;
         // 默认 HTTP 版本
         private String version = HttpConstant.HTTP_DEFAULT_VERSION;
         // 请求方法
@@ -188,7 +185,9 @@ public class HttpRequest {
         /**
          * 默认构造函数。
          */
-        public Builder() {}
+        public Builder() {
+            this.headers = new HttpHeaders();
+        }
 
         /**
          * 使用现有的 HttpRequest 对象构造 Builder。
@@ -198,7 +197,7 @@ public class HttpRequest {
         public Builder(HttpRequest request) {
             this.method = request.method;
             this.uri = request.uri;
-            this.headers.putAll(request.headers);
+            this.headers = new HttpHeaders(request.headers);
             this.version = request.version;
             this.body = request.body;
         }
@@ -226,25 +225,48 @@ public class HttpRequest {
         }
 
         /**
-         * 添加请求头。
+         * 设置请求头，替换所有同名的请求头。
          *
          * @param name 请求头名称
          * @param value 请求头值
          * @return 当前 Builder 实例
          */
         public Builder header(String name, String value) {
-            this.headers.put(name, value);
+            this.headers.set(name, value);
+            return this;
+        }
+
+        /**
+         * 追加请求头，保留已有的同名请求头（例如多个 Set-Cookie）。
+         *
+         * @param name 请求头名称
+         * @param value 请求头值
+         * @return 当前 Builder 实例
+         */
+        public Builder addHeader(String name, String value) {
+            this.headers.add(name, value);
+            return this;
+        }
+
+        /**
+         * 移除请求头。
+         *
+         * @param name 请求头名称
+         * @return 当前 Builder 实例
+         */
+        public Builder removeHeader(String name) {
+            this.headers.remove(name);
             return this;
         }
 
         /**
-         * 设置请求头的映射。
+         * 追加一组请求头。
          *
-         * @param headers 请求头的映射
+         * @param headers 请求头集合
          * @return 当前 Builder 实例
          */
-        public Builder headers(Map<String, String> headers) {
-            this.headers.putAll(headers);
+        public Builder headers(HttpHeaders headers) {
+            this.headers.addAll(headers);
             return this;
         }
 
@@ -2,25 +2,23 @@ package cn.edu.hit.core;
 
 import static cn.edu.hit.utils.DateUtils.parseHttpDateTime;
 
-import java.io.Serializable;
 import java.time.ZonedDateTime;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 表示一个 HTTP 响应。
  */
-public class HttpResponse implements Serializable {
+public class HttpResponse {
 
     // HTTP 版本，例如 HTTP/1.1
     private final String version;
     // HTTP 状态码，例如 200, 304 等
     private final HttpStatus statusCode;
-    // HTTP 响应头的映射
-    private final Map<String, String> headers;
+    // HTTP 响应头集合
+    private final HttpHeaders headers;
     // HTTP 响应体的字节数组
     private final byte[] body;
+    // 分块传输的尾部字段
+    private final HttpHeaders trailers;
 
     /**
      * 使用 Builder 构造 HttpResponse 对象。
@@ -30,8 +28,9 @@ public class HttpResponse implements Serializable {
     private HttpResponse(Builder builder) {
         this.version = builder.version;
         this.statusCode = builder.statusCode;
-        this.headers = builder.headers;
+        this.headers = builder.headers.toReadOnly();
         this.body = builder.body;
+        this.trailers = builder.trailers.toReadOnly();
     }
 
     /**
@@ -75,12 +74,12 @@ public class HttpResponse implements Serializable {
     }
 
     /**
-     * 获取响应头的不可修改映射。
+     * 获取响应头。
      *
-     * @return 响应头的不可修改映射
+     * @return 只读的响应头集合
      */
-    public Map<String, String> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+    public HttpHeaders getHeaders() {
+        return headers;
     }
 
     /**
@@ -92,13 +91,22 @@ public class HttpResponse implements Serializable {
         return body;
     }
 
+    /**
+     * 获取分块传输的尾部字段。
+     *
+     * @return 只读的尾部字段集合，没有尾部字段时为空
+     */
+    public HttpHeaders getTrailers() {
+        return trailers;
+    }
+
     /**
      * 获取 Last-Modified 时间。
      *
      * @return Last-Modified 时间
      */
     public ZonedDateTime getLastModified() {
-        String timeStr = headers.getOrDefault("Last-Modified", null);
+        String timeStr = headers.get("Last-Modified");
         return timeStr != null ? parseHttpDateTime(timeStr) : null;
     }
 
@@ -112,7 +120,7 @@ public class HttpResponse implements Serializable {
         StringBuilder sb = new StringBuilder();
         String statusLine = String.format("%s %d %s\r\n", version, statusCode.getCode(), statusCode.getDescription());
         sb.append(statusLine);
-        headers.forEach((key, value) -> sb.append(key).append(": ").append(value).append("\r\n"));
+        sb.append(headers);
         sb.append("\r\n");
         return sb.toString();
     }
@@ -121,19 +129,23 @@ public class HttpResponse implements Serializable {
      * 用于构建 HttpResponse 对象的 Builder 类。
      */
     public static class Builder {
-        // 响应头的映射
-        private final Map<String, String> headers = new HashMap<>();
+        // 响应头集合
+        private final HttpHeaders headers;
         // 默认 HTTP 版本
         private String version = HttpConstant.HTTP_DEFAULT_VERSION;
         // HTTP 状态码
         private HttpStatus statusCode;
         // 响应体的字节数组
         private byte[] body;
+        // 分块传输的尾部字段
+        private HttpHeaders trailers = new HttpHeaders();
 
         /**
          * 默认构造函数。
          */
-        public Builder() {}
+        public Builder() {
+            this.headers = new HttpHeaders();
+        }
 
         /**
          * 使用现有的 HttpResponse 对象构造 Builder。
@@ -143,8 +155,9 @@ public class HttpResponse implements Serializable {
         public Builder(HttpResponse response) {
             this.version = response.version;
             this.statusCode = response.statusCode;
-            this.headers.putAll(response.headers);
+            this.headers = new HttpHeaders(response.headers);
             this.body = response.body;
+            this.trailers = response.trailers;
         }
 
         /**
@@ -170,25 +183,48 @@ public class HttpResponse implements Serializable {
         }
 
         /**
-         * 添加响应头。
+         * 设置响应头，替换所有同名的响应头。
          *
          * @param name 响应头名称
          * @param value 响应头值
          * @return 当前 Builder 实例
          */
         public Builder header(String name, String value) {
-            this.headers.put(name, value);
+            this.headers.set(name, value);
+            return this;
+        }
+
+        /**
+         * 追加响应头，保留已有的同名响应头（例如多个 Set-Cookie）。
+         *
+         * @param name 响应头名称
+         * @param value 响应头值
+         * @return 当前 Builder 实例
+         */
+        public Builder addHeader(String name, String value) {
+            this.headers.add(name, value);
             return this;
         }
 
         /**
-         * 设置响应头的映射。
+         * 移除响应头。
          *
-         * @param headers 响应头的映射
+         * @param name 响应头名称
+         * @return 当前 Builder 实例
+         */
+        public Builder removeHeader(String name) {
+            this.headers.remove(name);
+            return this;
+        }
+
+        /**
+         * 追加一组响应头。
+         *
+         * @param headers 响应头集合
          * @return 当前 Builder 实例
          */
-        public Builder headers(Map<String, String> headers) {
-            this.headers.putAll(headers);
+        public Builder headers(HttpHeaders headers) {
+            this.headers.addAll(headers);
             return this;
         }
 
@@ -203,6 +239,17 @@ public class HttpResponse implements Serializable {
             return this;
         }
 
+        /**
+         * 设置分块传输的尾部字段。
+         *
+         * @param trailers 尾部字段
+         * @return 当前 Builder 实例
+         */
+        public Builder trailers(HttpHeaders trailers) {
+            this.trailers = trailers;
+            return this;
+        }
+
         /**
          * 构建 HttpResponse 对象。
          *
@@ -0,0 +1,301 @@
+package cn.edu.hit.filter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 域名规则匹配器：将域名规则编译为按标签逆序组织的字典树（例如 www.hit.edu.cn 依次对应 cn、edu、hit、www 四层节点），
+ * 查询时从主机名的最后一个标签开始逐层查找，耗时只与主机名的标签数有关，与规则数量无关。
+ * <p>
+ * 支持三种规则：
+ * <ul>
+ *     <li>{@code www.hit.edu.cn}：只匹配该域名本身；</li>
+ *     <li>{@code *.hit.edu.cn}：匹配该域名的所有子域名，不匹配该域名本身；</li>
+ *     <li>{@code .hit.edu.cn}：匹配该域名本身及其所有子域名。</li>
+ * </ul>
+ * 域名不区分大小写，查询时忽略主机名中的端口号和末尾的点。每个节点的子节点保存在开放寻址的散列表中，
+ * 查询过程不分配任何对象。该类不是线程安全的，添加规则与查询不能同时进行。
+ */
+@Slf4j
+public class DomainMatcher {
+
+    private static final byte EXACT = 1; // 匹配节点对应的域名本身
+    private static final byte SUBDOMAINS = 2; // 匹配节点对应域名的所有子域名
+    private static final int INITIAL_CAPACITY = 2; // 子节点散列表的初始容量，必须是 2 的幂
+
+    private final Node root = new Node(); // 字典树的根节点
+    private int ruleCount; // 规则数量
+    private int nodeCount; // 节点数量（不含根节点）
+
+    /**
+     * 从规则文件加载域名规则。每行一条规则，{@code #} 之后的内容为注释；兼容 hosts 文件格式（例如
+     * {@code 0.0.0.0 ads.example.com}），一行中有多个字段时取最后一个字段作为规则。
+     *
+     * @param file 规则文件
+     * @throws IOException 如果读取文件失败
+     * @throws IllegalArgumentException 如果文件中有格式错误的规则
+     */
+    public void load(Path file) throws IOException {
+        int before = ruleCount;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String rule = (comment == -1 ? line : line.substring(0, comment)).trim();
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                int space = Math.max(rule.lastIndexOf(' '), rule.lastIndexOf('\t'));
+                add(space == -1 ? rule : rule.substring(space + 1));
+            }
+        }
+        log.info("已从 {} 加载域名规则: {} 条，节点数: {}", file, ruleCount - before, nodeCount);
+    }
+
+    /**
+     * 添加一条域名规则。
+     *
+     * @param rule 域名规则
+     * @throws IllegalArgumentException 如果规则为空或包含空标签
+     */
+    public void add(String rule) {
+        byte flag = EXACT;
+        int start = 0;
+        if (rule.startsWith("*.")) {
+            flag = SUBDOMAINS;
+            start = 2;
+        } else if (rule.startsWith(".")) {
+            flag = EXACT | SUBDOMAINS;
+            start = 1;
+        }
+        int end = hostEnd(rule);
+        if (start >= end) {
+            throw new IllegalArgumentException("域名规则为空: " + rule);
+        }
+        Node node = root;
+        // 从最后一个标签开始逐层向下
+        for (int labelEnd = end; labelEnd > start; ) {
+            int labelStart = rule.lastIndexOf('.', labelEnd - 1) + 1;
+            if (labelStart < start || labelStart == labelEnd) {
+                throw new IllegalArgumentException("域名规则包含空标签: " + rule);
+            }
+            node = node.getOrAddChild(rule.substring(labelStart, labelEnd).toLowerCase(Locale.ROOT), this);
+            labelEnd = labelStart - 1;
+        }
+        if ((node.flags & flag) != flag) {
+            node.flags |= flag;
+            ruleCount++;
+        }
+    }
+
+    /**
+     * 判断主机名是否匹配任意一条规则。
+     *
+     * @param host 主机名，可以带有端口号（例如 Host 头部的值）
+     * @return 如果匹配则返回 true
+     */
+    public boolean matches(String host) {
+        if (host == null) {
+            return false;
+        }
+        int end = hostEnd(host);
+        Node node = root;
+        for (int labelEnd = end; labelEnd > 0; ) {
+            int labelStart = host.lastIndexOf('.', labelEnd - 1) + 1;
+            node = node.getChild(host, labelStart, labelEnd);
+            if (node == null) {
+                return false;
+            }
+            if (labelStart == 0) {
+                return (node.flags & EXACT) != 0; // 所有标签都已匹配
+            }
+            if ((node.flags & SUBDOMAINS) != 0) {
+                return true; // 还有剩余标签，说明是该节点对应域名的子域名
+            }
+            labelEnd = labelStart - 1;
+        }
+        return false;
+    }
+
+    /**
+     * 获取规则数量。
+     *
+     * @return 规则数量
+     */
+    public int size() {
+        return ruleCount;
+    }
+
+    /**
+     * 获取字典树的节点数量（不含根节点）。
+     *
+     * @return 节点数量
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * 计算主机名去掉端口号和末尾的点之后的结束位置。IPv6 地址字面量（例如 {@code [::1]:8080}）只去掉端口号。
+     *
+     * @param host 主机名
+     * @return 结束位置（不含）
+     */
+    private static int hostEnd(String host) {
+        int end = host.length();
+        if (host.startsWith("[")) {
+            int bracket = host.indexOf(']');
+            return bracket == -1 ? end : bracket + 1;
+        }
+        int colon = host.indexOf(':');
+        if (colon != -1 && colon == host.lastIndexOf(':')) {
+            end = colon;
+        }
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 计算标签的哈希值，忽略 ASCII 字母的大小写。
+     *
+     * @param s 包含标签的字符串
+     * @param start 标签的起始位置
+     * @param end 标签的结束位置（不含）
+     * @return 哈希值
+     */
+    private static int hash(String s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + toLowerCase(s.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * 判断标签是否与字符串中的一段相同，忽略 ASCII 字母的大小写。
+     *
+     * @param label 小写的标签
+     * @param s 字符串
+     * @param start 起始位置
+     * @param end 结束位置（不含）
+     * @return 如果相同则返回 true
+     */
+    private static boolean labelEquals(String label, String s, int start, int end) {
+        if (label.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) != toLowerCase(s.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将 ASCII 大写字母转换为小写，其他字符不变。
+     *
+     * @param c 字符
+     * @return 转换后的字符
+     */
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * 字典树节点，对应一个域名（从根节点到该节点的标签逆序连接）。子节点按标签保存在开放寻址（线性探测）的散列表中，
+     * 叶子节点不分配散列表。
+     */
+    private static final class Node {
+
+        private String[] labels; // 子节点的标签（小写），为 null 表示没有子节点
+        private Node[] children; // 与标签对应的子节点
+        private int childCount; // 子节点数量
+        private byte flags; // 匹配标志，EXACT 与 SUBDOMAINS 的组合
+
+        /**
+         * 查找标签对应的子节点。
+         *
+         * @param s 包含标签的字符串
+         * @param start 标签的起始位置
+         * @param end 标签的结束位置（不含）
+         * @return 子节点，不存在时返回 null
+         */
+        private Node getChild(String s, int start, int end) {
+            if (labels == null) {
+                return null;
+            }
+            int mask = labels.length - 1;
+            for (int i = hash(s, start, end) & mask; labels[i] != null; i = (i + 1) & mask) {
+                if (labelEquals(labels[i], s, start, end)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 查找标签对应的子节点，不存在时创建。
+         *
+         * @param label 小写的标签
+         * @param matcher 所属匹配器，用于统计节点数量
+         * @return 子节点
+         */
+        private Node getOrAddChild(String label, DomainMatcher matcher) {
+            Node child = getChild(label, 0, label.length());
+            if (child != null) {
+                return child;
+            }
+            if (labels == null) {
+                labels = new String[INITIAL_CAPACITY];
+                children = new Node[INITIAL_CAPACITY];
+            } else if ((childCount + 1) * 4 > labels.length * 3) {
+                resize(); // 装载因子超过 3/4 时扩容
+            }
+            child = new Node();
+            insert(label, child);
+            childCount++;
+            matcher.nodeCount++;
+            return child;
+        }
+
+        /**
+         * 将子节点插入散列表，调用方保证散列表中有空位且标签不存在。
+         *
+         * @param label 小写的标签
+         * @param child 子节点
+         */
+        private void insert(String label, Node child) {
+            int mask = labels.length - 1;
+            int i = hash(label, 0, label.length()) & mask;
+            while (labels[i] != null) {
+                i = (i + 1) & mask;
+            }
+            labels[i] = label;
+            children[i] = child;
+        }
+
+        /**
+         * 将散列表的容量扩大一倍并重新插入所有子节点。
+         */
+        private void resize() {
+            String[] oldLabels = labels;
+            Node[] oldChildren = children;
+            labels = new String[oldLabels.length * 2];
+            children = new Node[oldLabels.length * 2];
+            for (int i = 0; i < oldLabels.length; i++) {
+                if (oldLabels[i] != null) {
+                    insert(oldLabels[i], oldChildren[i]);
+                }
+            }
+        }
+    }
+}
@@ -1,49 +1,287 @@
 package cn.edu.hit.filter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
+import cn.edu.hit.config.ProxyConfig;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 过滤器管理器，所有连接共享同一个实例。
+ * <p>
+ * 当前生效的规则是一个不可变的 {@link FilterRules} 快照，保存在原子引用中，查询时无需加锁。规则由代码中给出的内置规则
+ * 与配置的规则文件（{@code -Dproxy.filter.rules}、{@code -Dproxy.filter.sites}）合并而成；
+ * 规则文件发生变化时后台线程重新编译规则并整体替换快照，正在处理的请求继续使用旧快照，无需重启代理。
+ * 新规则编译失败时保留旧快照。
+ */
+@Slf4j
 public class FilterManager {
 
-    private final Set<String> blockedSites; // 禁止访问的网站
-    private final Set<String> blockedUsers; // 禁止访问的用户
-    private final Map<String, String> redirectMap; // 网站重定向（钓鱼）
+    private static final long RELOAD_DELAY_MILLIS = 200; // 规则文件变化后等待写入完成的时间（毫秒）
+
+    private final Set<String> blockedSites; // 内置的禁止访问的网站规则
+    private final Set<String> blockedUsers; // 内置的禁止访问的用户规则
+    private final Map<String, String> redirectMap; // 内置的网站重定向（钓鱼）规则
+    private final Path rulesFile; // 规则文件，为 null 表示未配置
+    private final Path sitesFile; // 禁止访问的网站规则文件，为 null 表示未配置
+    private final AtomicReference<FilterRules> rules = new AtomicReference<>(); // 当前生效的规则快照
 
     public FilterManager() {
-        blockedSites = new HashSet<>();
-        blockedUsers = new HashSet<>();
-        redirectMap = new HashMap<>();
+        this(Set.of(), Set.of(), Map.of());
     }
 
+    /**
+     * 构造函数，编译内置规则与配置的规则文件；配置了规则文件时启动后台线程监视文件变化。
+     *
+     * @param blockedSites 禁止访问的网站规则，格式见 {@link DomainMatcher}
+     * @param blockedUsers 禁止访问的用户，IP 地址或 CIDR 网段（例如 10.0.0.0/8）
+     * @param redirectMap 网站重定向映射
+     */
     public FilterManager(Set<String> blockedSites, Set<String> blockedUsers, Map<String, String> redirectMap) {
         this.blockedSites = new HashSet<>(blockedSites);
         this.blockedUsers = new HashSet<>(blockedUsers);
         this.redirectMap = new HashMap<>(redirectMap);
+        this.rulesFile = ProxyConfig.FILTER_RULES_FILE != null ? Paths.get(ProxyConfig.FILTER_RULES_FILE) : null;
+        this.sitesFile = ProxyConfig.BLOCKED_SITES_FILE != null ? Paths.get(ProxyConfig.BLOCKED_SITES_FILE) : null;
+        try {
+            rules.set(compile());
+        } catch (IOException e) {
+            throw new RuntimeException("无法加载过滤规则: " + e.getMessage(), e);
+        }
+        log.info("已加载过滤规则，{}", rules.get());
+        if (rulesFile != null || sitesFile != null) {
+            startWatching();
+        }
+    }
+
+    /**
+     * 获取当前生效的规则快照。同一请求中的多次查询应使用同一个快照。
+     *
+     * @return 规则快照
+     */
+    public FilterRules getRules() {
+        return rules.get();
+    }
+
+    /**
+     * 重新编译规则并替换当前快照。编译失败时保留当前快照。
+     *
+     * @return 如果替换成功则返回 true
+     */
+    public synchronized boolean reload() {
+        try {
+            FilterRules reloaded = compile();
+            rules.set(reloaded);
+            log.info("已重新加载过滤规则，{}", reloaded);
+            return true;
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            log.warn("重新加载过滤规则失败，继续使用原有规则: {}", e.getMessage());
+            return false;
+        }
     }
 
-    public void addBlockedSite(String site) {
+    /**
+     * 添加一条内置的禁止访问的网站规则。规则先编译为候选快照，成功后才生效。
+     *
+     * @param site 网站规则，格式见 {@link DomainMatcher}
+     * @throws IllegalArgumentException 如果规则无效，此时规则不会被添加
+     * @throws UncheckedIOException 如果读取规则文件失败，此时规则不会被添加
+     */
+    public synchronized void addBlockedSite(String site) {
+        Set<String> sites = new HashSet<>(blockedSites);
+        sites.add(site);
+        commit(compile(sites, blockedUsers, redirectMap));
         blockedSites.add(site);
     }
 
     public boolean isSiteBlocked(String site) {
-        return blockedSites.contains(site);
+        return rules.get().isSiteBlocked(site);
     }
 
-    public void addBlockedUser(String user) {
+    /**
+     * 添加一条内置的禁止访问的用户规则。规则先编译为候选快照，成功后才生效。
+     *
+     * @param user IP 地址或 CIDR 网段
+     * @throws IllegalArgumentException 如果规则无效，此时规则不会被添加
+     * @throws UncheckedIOException 如果读取规则文件失败，此时规则不会被添加
+     */
+    public synchronized void addBlockedUser(String user) {
+        Set<String> users = new HashSet<>(blockedUsers);
+        users.add(user);
+        commit(compile(blockedSites, users, redirectMap));
         blockedUsers.add(user);
     }
 
     public boolean isUserBlocked(String user) {
-        return blockedUsers.contains(user);
+        return rules.get().isUserBlocked(user);
+    }
+
+    /**
+     * 判断客户端地址是否被禁止访问，直接比较地址字节，适合在接收连接时调用。
+     *
+     * @param address 客户端地址
+     * @return 如果被禁止访问则返回 true
+     */
+    public boolean isUserBlocked(InetAddress address) {
+        return rules.get().isUserBlocked(address);
     }
 
-    public void putRedirect(String targetSite, String redirectSite) {
+    /**
+     * 添加或替换一条内置的网站重定向规则。规则先编译为候选快照，成功后才生效。
+     *
+     * @param targetSite 被重定向的网站规则
+     * @param redirectSite 重定向的目标网站
+     * @throws IllegalArgumentException 如果规则无效，此时规则不会被添加
+     * @throws UncheckedIOException 如果读取规则文件失败，此时规则不会被添加
+     */
+    public synchronized void putRedirect(String targetSite, String redirectSite) {
+        Map<String, String> redirects = new HashMap<>(redirectMap);
+        redirects.put(targetSite, redirectSite);
+        commit(compile(blockedSites, blockedUsers, redirects));
         redirectMap.put(targetSite, redirectSite);
     }
 
     public String getRedirect(String site) {
-        return redirectMap.getOrDefault(site, null);
+        return rules.get().getRedirect(site);
+    }
+
+    /**
+     * 将内置规则与规则文件编译为新的快照。
+     *
+     * @return 规则快照
+     * @throws IOException 如果读取规则文件失败
+     */
+    private FilterRules compile() throws IOException {
+        try {
+            return compile(blockedSites, blockedUsers, redirectMap);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 将给定的内置规则与规则文件编译为新的快照，不修改当前的内置规则与快照。
+     *
+     * @param sites 禁止访问的网站规则
+     * @param users 禁止访问的用户规则
+     * @param redirects 网站重定向规则
+     * @return 规则快照
+     * @throws IllegalArgumentException 如果规则无效
+     * @throws UncheckedIOException 如果读取规则文件失败
+     */
+    private FilterRules compile(Set<String> sites, Set<String> users, Map<String, String> redirects) {
+        FilterRules.Builder builder = FilterRules.newBuilder()
+            .blockedSites(sites)
+            .blockedUsers(users)
+            .redirects(redirects);
+        try {
+            if (rulesFile != null) {
+                builder.rulesFile(rulesFile);
+            }
+            if (sitesFile != null) {
+                builder.blockedSitesFile(sitesFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 用编译成功的候选快照替换当前快照。
+     *
+     * @param candidate 候选快照
+     */
+    private void commit(FilterRules candidate) {
+        rules.set(candidate);
+        log.info("已更新过滤规则，{}", candidate);
+    }
+
+    /**
+     * 启动后台线程，监视规则文件所在目录，规则文件被修改或替换时重新加载规则。
+     */
+    private void startWatching() {
+        List<Path> files = new ArrayList<>();
+        if (rulesFile != null) {
+            files.add(rulesFile.toAbsolutePath());
+        }
+        if (sitesFile != null) {
+            files.add(sitesFile.toAbsolutePath());
+        }
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path file : files) {
+                // 编辑器常以“写入临时文件后重命名”的方式保存文件，因此同时监视创建事件
+                file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            log.warn("无法监视规则文件，修改规则后需要重启代理: {}", e.getMessage());
+            return;
+        }
+        Thread.ofPlatform().name("filter-rules-watcher").daemon().start(() -> watch(watchService, files));
+    }
+
+    /**
+     * 等待规则文件的变化事件并重新加载规则。短时间内的多个事件合并为一次重新加载。
+     *
+     * @param watchService 监视服务
+     * @param files 规则文件的绝对路径
+     */
+    private void watch(WatchService watchService, List<Path> files) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = pollChanges(key, files);
+                if (!changed) {
+                    continue;
+                }
+                Thread.sleep(RELOAD_DELAY_MILLIS); // 等待文件写入完成，并合并随后的事件
+                while ((key = watchService.poll()) != null) {
+                    pollChanges(key, files);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.info("停止监视规则文件");
+        }
+    }
+
+    /**
+     * 取出监视键上的事件并重置监视键。
+     *
+     * @param key 监视键
+     * @param files 规则文件的绝对路径
+     * @return 如果有规则文件发生变化则返回 true
+     */
+    private static boolean pollChanges(WatchKey key, List<Path> files) {
+        boolean changed = false;
+        Path directory = (Path)key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true; // 事件丢失，无法确定哪个文件发生了变化
+            } else if (files.contains(directory.resolve((Path)event.context()))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
     }
 }
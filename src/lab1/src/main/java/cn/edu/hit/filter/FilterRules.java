@@ -0,0 +1,200 @@
+package cn.edu.hit.filter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译后的过滤规则快照。快照创建后不再修改，可以被所有连接无锁地共享；规则变化时创建新的快照整体替换。
+ * <p>
+ * 规则文件每行一条规则，{@code #} 之后的内容为注释：
+ *
+ * <pre>
+ * site .www.hit.edu.cn                      # 禁止访问的网站，格式见 DomainMatcher
+ * user 10.0.0.0/8                           # 禁止访问的用户，格式见 IpMatcher
+ * redirect jwes.hit.edu.cn jwts.hit.edu.cn  # 网站重定向
+ * </pre>
+ */
+public final class FilterRules {
+
+    private final DomainMatcher blockedSites; // 禁止访问的网站
+    private final IpMatcher blockedUsers; // 禁止访问的用户
+    private final Map<String, String> redirectMap; // 网站重定向（钓鱼）
+
+    /**
+     * 私有构造函数，使用 {@link Builder} 创建实例。
+     *
+     * @param builder 构建器
+     */
+    private FilterRules(Builder builder) {
+        this.blockedSites = builder.blockedSites;
+        this.blockedUsers = builder.blockedUsers;
+        this.redirectMap = Map.copyOf(builder.redirectMap);
+    }
+
+    /**
+     * 创建一个构建器。
+     *
+     * @return 构建器
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * 判断网站是否被禁止访问。
+     *
+     * @param site 主机名，可以带有端口号
+     * @return 如果被禁止访问则返回 true
+     */
+    public boolean isSiteBlocked(String site) {
+        return blockedSites.matches(site);
+    }
+
+    /**
+     * 判断用户（地址字面量）是否被禁止访问。
+     *
+     * @param user 用户的 IP 地址字面量
+     * @return 如果被禁止访问则返回 true
+     */
+    public boolean isUserBlocked(String user) {
+        return blockedUsers.matches(user);
+    }
+
+    /**
+     * 判断客户端地址是否被禁止访问。
+     *
+     * @param address 客户端地址
+     * @return 如果被禁止访问则返回 true
+     */
+    public boolean isUserBlocked(InetAddress address) {
+        return blockedUsers.matches(address);
+    }
+
+    /**
+     * 获取网站的重定向目标。
+     *
+     * @param site 主机名
+     * @return 重定向目标，没有重定向规则时返回 null
+     */
+    public String getRedirect(String site) {
+        return redirectMap.get(site);
+    }
+
+    /**
+     * 返回规则数量的字符串表示形式。
+     *
+     * @return 规则数量
+     */
+    @Override
+    public String toString() {
+        return "网站规则: " + blockedSites.size() + "，用户规则: " + blockedUsers.size() + "，重定向规则: "
+            + redirectMap.size();
+    }
+
+    /**
+     * FilterRules 的构建器。构建完成后不应再使用。
+     */
+    public static class Builder {
+
+        private final DomainMatcher blockedSites = new DomainMatcher(); // 禁止访问的网站
+        private final IpMatcher blockedUsers = new IpMatcher(); // 禁止访问的用户
+        private final Map<String, String> redirectMap = new HashMap<>(); // 网站重定向
+
+        /**
+         * 添加禁止访问的网站规则。
+         *
+         * @param sites 域名规则
+         * @return 当前构建器
+         */
+        public Builder blockedSites(Set<String> sites) {
+            sites.forEach(blockedSites::add);
+            return this;
+        }
+
+        /**
+         * 从规则文件加载禁止访问的网站规则，每行一条域名规则。
+         *
+         * @param file 域名规则文件
+         * @return 当前构建器
+         * @throws IOException 如果读取文件失败
+         */
+        public Builder blockedSitesFile(Path file) throws IOException {
+            blockedSites.load(file);
+            return this;
+        }
+
+        /**
+         * 添加禁止访问的用户规则。
+         *
+         * @param users IP 地址或 CIDR 网段
+         * @return 当前构建器
+         */
+        public Builder blockedUsers(Set<String> users) {
+            users.forEach(blockedUsers::add);
+            return this;
+        }
+
+        /**
+         * 添加网站重定向规则。
+         *
+         * @param redirects 网站到重定向目标的映射
+         * @return 当前构建器
+         */
+        public Builder redirects(Map<String, String> redirects) {
+            redirectMap.putAll(redirects);
+            return this;
+        }
+
+        /**
+         * 从规则文件加载规则，格式见 {@link FilterRules}。
+         *
+         * @param file 规则文件
+         * @return 当前构建器
+         * @throws IOException 如果读取文件失败
+         * @throws IllegalArgumentException 如果文件中有格式错误的规则
+         */
+        public Builder rulesFile(Path file) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    int comment = line.indexOf('#');
+                    String rule = (comment == -1 ? line : line.substring(0, comment)).trim();
+                    if (rule.isEmpty()) {
+                        continue;
+                    }
+                    String[] fields = rule.split("\\s+");
+                    String type = fields[0].toLowerCase(Locale.ROOT);
+                    if ("site".equals(type) && fields.length == 2) {
+                        blockedSites.add(fields[1]);
+                    } else if ("user".equals(type) && fields.length == 2) {
+                        blockedUsers.add(fields[1]);
+                    } else if ("redirect".equals(type) && fields.length == 3) {
+                        redirectMap.put(fields[1], fields[2]);
+                    } else {
+                        throw new IllegalArgumentException(file + " 第 " + lineNumber + " 行规则格式错误: " + line);
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 构建规则快照。
+         *
+         * @return 规则快照
+         */
+        public FilterRules build() {
+            return new FilterRules(this);
+        }
+    }
+}
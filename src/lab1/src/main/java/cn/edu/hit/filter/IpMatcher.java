@@ -0,0 +1,226 @@
+package cn.edu.hit.filter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * IP 地址规则匹配器：将 IPv4 与 IPv6 的 CIDR 规则（例如 {@code 10.0.0.0/8}、{@code 2001:db8::/32}，
+ * 单个地址视为前缀长度为地址位数的规则）编译为二进制前缀字典树。
+ * <p>
+ * IPv4 与 IPv6 各使用一棵字典树，节点保存在 int 数组中，查询时直接按地址字节的各位从高到低向下查找，
+ * 遇到规则节点即匹配，最多比较 32 或 128 位，不格式化地址也不分配对象。IPv4 映射的 IPv6 地址（::ffff:a.b.c.d）
+ * 按 IPv4 地址匹配。该类不是线程安全的，添加规则与查询不能同时进行。
+ */
+public class IpMatcher {
+
+    private final PrefixTrie ipv4 = new PrefixTrie(); // IPv4 规则
+    private final PrefixTrie ipv6 = new PrefixTrie(); // IPv6 规则
+    private int ruleCount; // 规则数量
+
+    /**
+     * 添加一条规则。
+     *
+     * @param rule IP 地址或 CIDR 网段
+     * @throws IllegalArgumentException 如果规则不是合法的 IP 地址字面量或前缀长度超出范围
+     */
+    public void add(String rule) {
+        int slash = rule.indexOf('/');
+        byte[] address = parseLiteral(slash == -1 ? rule : rule.substring(0, slash));
+        int maxLength = address.length * 8;
+        int prefixLength = maxLength;
+        if (slash != -1) {
+            try {
+                prefixLength = Integer.parseInt(rule.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("前缀长度格式错误: " + rule);
+            }
+            if (prefixLength < 0 || prefixLength > maxLength) {
+                throw new IllegalArgumentException("前缀长度超出范围: " + rule);
+            }
+        }
+        (address.length == 4 ? ipv4 : ipv6).insert(address, prefixLength);
+        ruleCount++;
+    }
+
+    /**
+     * 判断地址是否属于任意一条规则。
+     *
+     * @param address 地址
+     * @return 如果匹配则返回 true
+     */
+    public boolean matches(InetAddress address) {
+        return address != null && matches(address.getAddress());
+    }
+
+    /**
+     * 判断原始地址字节是否属于任意一条规则。
+     *
+     * @param address 4 字节的 IPv4 地址或 16 字节的 IPv6 地址（网络字节序）
+     * @return 如果匹配则返回 true
+     */
+    public boolean matches(byte[] address) {
+        if (address.length == 4) {
+            return ipv4.matches(address, 0, 32);
+        }
+        if (address.length == 16) {
+            return isIpv4Mapped(address) ? ipv4.matches(address, 12, 32) : ipv6.matches(address, 0, 128);
+        }
+        return false;
+    }
+
+    /**
+     * 判断地址字面量（例如 {@code 127.0.0.1}）是否属于任意一条规则。
+     *
+     * @param address 地址字面量
+     * @return 如果匹配则返回 true，不是合法的地址字面量时返回 false
+     */
+    public boolean matches(String address) {
+        try {
+            return matches(parseLiteral(address));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取规则数量。
+     *
+     * @return 规则数量
+     */
+    public int size() {
+        return ruleCount;
+    }
+
+    /**
+     * 解析 IP 地址字面量。只接受字面量，避免 {@link InetAddress#getByName(String)} 对主机名进行 DNS 查询。
+     *
+     * @param literal 地址字面量
+     * @return 地址字节，IPv4 映射的 IPv6 地址转换为 4 字节
+     * @throws IllegalArgumentException 如果不是合法的地址字面量
+     */
+    private static byte[] parseLiteral(String literal) {
+        String address = literal.trim();
+        if (address.startsWith("[") && address.endsWith("]")) {
+            address = address.substring(1, address.length() - 1);
+        }
+        // IPv6 字面量由十六进制数字、冒号和点（内嵌 IPv4）组成，IPv4 字面量只有十进制数字和点
+        boolean ipv6 = address.indexOf(':') != -1;
+        boolean literalChars = !address.isEmpty();
+        for (int i = 0; i < address.length() && literalChars; i++) {
+            char c = address.charAt(i);
+            literalChars = Character.digit(c, ipv6 ? 16 : 10) != -1 || c == '.' || c == ':';
+        }
+        if (!literalChars) {
+            throw new IllegalArgumentException("不是合法的 IP 地址: " + literal);
+        }
+        try {
+            byte[] bytes = InetAddress.getByName(address).getAddress();
+            return bytes.length == 16 && isIpv4Mapped(bytes) ? Arrays.copyOfRange(bytes, 12, 16) : bytes;
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("不是合法的 IP 地址: " + literal, e);
+        }
+    }
+
+    /**
+     * 判断 16 字节的地址是否为 IPv4 映射的 IPv6 地址（前 80 位为 0，随后 16 位为 1）。
+     *
+     * @param address 16 字节的地址
+     * @return 如果是 IPv4 映射地址则返回 true
+     */
+    private static boolean isIpv4Mapped(byte[] address) {
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return address[10] == (byte)0xff && address[11] == (byte)0xff;
+    }
+
+    /**
+     * 二进制前缀字典树。节点 i 的两个子节点保存在 children[2i] 与 children[2i+1]，0 表示没有子节点（根节点为 0，
+     * 不会成为子节点）；terminal 标记节点是否为某条规则的前缀末端，规则末端之下的节点不再需要。
+     */
+    private static final class PrefixTrie {
+
+        private static final int INITIAL_NODES = 64; // 初始节点容量
+
+        private int[] children = new int[2 * INITIAL_NODES]; // 子节点下标
+        private boolean[] terminal = new boolean[INITIAL_NODES]; // 节点是否为规则末端
+        private int nodeCount = 1; // 已使用的节点数，包括根节点
+
+        /**
+         * 插入一条前缀规则。
+         *
+         * @param address 地址字节
+         * @param prefixLength 前缀长度（位）
+         */
+        private void insert(byte[] address, int prefixLength) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength; bit++) {
+                if (terminal[node]) {
+                    return; // 已被更短的前缀覆盖
+                }
+                int slot = 2 * node + bitAt(address, 0, bit);
+                if (children[slot] == 0) {
+                    int child = allocate(); // 先分配再写入，扩容会替换 children 数组
+                    children[slot] = child;
+                }
+                node = children[slot];
+            }
+            terminal[node] = true;
+            // 更长的前缀已被覆盖，断开子节点（节点本身不回收）
+            children[2 * node] = 0;
+            children[2 * node + 1] = 0;
+        }
+
+        /**
+         * 判断地址是否匹配任意一条前缀规则。
+         *
+         * @param address 地址字节
+         * @param offset 地址在数组中的起始位置
+         * @param bits 地址的位数
+         * @return 如果匹配则返回 true
+         */
+        private boolean matches(byte[] address, int offset, int bits) {
+            int node = 0;
+            for (int bit = 0; ; bit++) {
+                if (terminal[node]) {
+                    return true;
+                }
+                if (bit == bits) {
+                    return false;
+                }
+                node = children[2 * node + bitAt(address, offset, bit)];
+                if (node == 0) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * 分配一个新节点，容量不足时扩容一倍。
+         *
+         * @return 新节点的下标
+         */
+        private int allocate() {
+            if (nodeCount == terminal.length) {
+                terminal = Arrays.copyOf(terminal, nodeCount * 2);
+                children = Arrays.copyOf(children, nodeCount * 4);
+            }
+            return nodeCount++;
+        }
+
+        /**
+         * 获取地址中指定位置的位（从最高位开始计数）。
+         *
+         * @param address 地址字节
+         * @param offset 地址在数组中的起始位置
+         * @param bit 位的序号
+         * @return 0 或 1
+         */
+        private static int bitAt(byte[] address, int offset, int bit) {
+            return (address[offset + (bit >>> 3)] >>> (7 - (bit & 7))) & 1;
+        }
+    }
+}
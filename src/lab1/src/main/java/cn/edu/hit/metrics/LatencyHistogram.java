@@ -0,0 +1,124 @@
+package cn.edu.hit.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图（HDR 风格的对数线性分桶），以纳秒为单位记录耗时。
+ * <p>
+ * 小于 {@code 2^SUB_BUCKET_BITS} 的值每个值一个桶；更大的值按最高位所在的 2 的幂分组，每组再按随后的
+ * {@code SUB_BUCKET_BITS} 位等分为若干子桶，因此任何值的相对误差不超过 {@code 2^-SUB_BUCKET_BITS}（约 3%）。
+ * 记录只需计算桶下标并对计数数组做一次原子自增，不加锁也不分配对象；查询分位数时遍历计数数组，
+ * 与记录并发进行时得到的是近似的快照。超过上限的值计入最后一个桶。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5; // 每组子桶数量的位数
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 每组子桶数量
+    private static final int MAX_VALUE_BITS = 40; // 可精确记录的最大值的位数（2^40 纳秒约 18 分钟）
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT; // 桶数量
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT); // 每个桶的记录次数
+    private final LongAdder totalCount = new LongAdder(); // 记录次数
+    private final LongAdder totalNanos = new LongAdder(); // 记录值之和（纳秒）
+
+    /**
+     * 记录一次耗时。
+     *
+     * @param nanos 耗时（纳秒），负值按 0 记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalNanos.add(value);
+    }
+
+    /**
+     * 记录从指定时刻到现在的耗时。
+     *
+     * @param startNanos 开始时刻，{@link System#nanoTime()} 的返回值
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 获取记录次数。
+     *
+     * @return 记录次数
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * 获取记录值之和。
+     *
+     * @return 耗时之和（纳秒）
+     */
+    public long getSumNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * 计算分位数，结果为分位数所在桶的上界。
+     *
+     * @param quantile 分位数，取值范围 [0, 1]
+     * @return 耗时（纳秒），没有记录时返回 0
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(quantile * total)); // 第 rank 个最小的记录值
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 计算值所在的桶下标。
+     *
+     * @param value 非负的值
+     * @return 桶下标
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // 最高位的位置，不小于 SUB_BUCKET_BITS
+        if (exponent >= MAX_VALUE_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift) & (SUB_BUCKET_COUNT - 1); // 最高位之后的 SUB_BUCKET_BITS 位
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * 计算桶中最大的值。
+     *
+     * @param index 桶下标
+     * @return 桶的上界（包含）
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lowerBound = (long)(SUB_BUCKET_COUNT + (index & (SUB_BUCKET_COUNT - 1))) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,103 @@
+package cn.edu.hit.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 指标服务：在本机的管理端口上提供 {@code GET /metrics}，以 Prometheus 文本格式返回 {@link ProxyMetrics} 中的全部指标。
+ * 只监听回环地址，不经过代理的过滤与转发逻辑，由 HttpServer 自己的分发线程处理。
+ */
+@Slf4j
+public class MetricsServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8"; // Prometheus 文本格式
+
+    private final HttpServer server; // 管理端口上的 HTTP 服务
+    private final ProxyMetrics metrics; // 输出的指标
+
+    /**
+     * 构造函数，绑定本机的管理端口。
+     *
+     * @param port 管理端口
+     * @param metrics 输出的指标
+     * @throws IOException 如果无法绑定端口
+     */
+    public MetricsServer(int port, ProxyMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(null); // 使用 HttpServer 自己的分发线程
+    }
+
+    /**
+     * 启动指标服务。
+     */
+    public void start() {
+        server.start();
+        log.info("指标服务正在运行: http://{}:{}/metrics", server.getAddress().getHostString(),
+            server.getAddress().getPort());
+    }
+
+    /**
+     * 停止指标服务。
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * 如果配置了管理端口，则启动指标服务；端口无法绑定时只记录警告，不影响代理服务器运行。
+     *
+     * @param port 管理端口，不大于 0 表示不启动
+     * @return 启动的指标服务，未启动时返回 null
+     */
+    public static MetricsServer startIfEnabled(int port) {
+        if (port <= 0) {
+            return null;
+        }
+        try {
+            MetricsServer metricsServer = new MetricsServer(port, ProxyMetrics.getInstance());
+            metricsServer.start();
+            return metricsServer;
+        } catch (IOException e) {
+            log.warn("无法启动指标服务，端口: {}，{}", port, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 处理一次请求。
+     *
+     * @param exchange 请求与响应
+     * @throws IOException 如果写出响应失败
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder(4096);
+            metrics.writePrometheus(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package cn.edu.hit.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 代理服务器的运行指标：各处理阶段的延迟直方图、事件计数器，以及由其他组件注册的累计值（例如命中次数）与瞬时值（例如缓存占用）。
+ * 所有连接共享同一个实例，记录时不加锁；{@link #writePrometheus(StringBuilder)} 以 Prometheus 文本格式输出全部指标。
+ */
+public class ProxyMetrics {
+
+    private static final ProxyMetrics INSTANCE = new ProxyMetrics(); // 全局指标
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999}; // 输出的分位数
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length]; // 各阶段的延迟
+    private final LongAdder[] counters = new LongAdder[Counter.values().length]; // 各事件的次数
+    private final List<Registered> registeredCounters = new CopyOnWriteArrayList<>(); // 注册的累计值
+    private final List<Registered> gauges = new CopyOnWriteArrayList<>(); // 注册的瞬时值
+
+    /**
+     * 私有构造函数，使用 {@link #getInstance()} 获取全局实例。
+     */
+    private ProxyMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 获取全局指标实例。
+     *
+     * @return 全局指标
+     */
+    public static ProxyMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一个阶段从指定时刻到现在的耗时。
+     *
+     * @param phase 处理阶段
+     * @param startNanos 阶段开始时刻，{@link System#nanoTime()} 的返回值
+     */
+    public void recordSince(Phase phase, long startNanos) {
+        phases[phase.ordinal()].recordSince(startNanos);
+    }
+
+    /**
+     * 获取一个阶段的延迟直方图。
+     *
+     * @param phase 处理阶段
+     * @return 延迟直方图
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * 将事件计数加一。
+     *
+     * @param counter 事件
+     */
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * 将事件计数增加指定的值。
+     *
+     * @param counter 事件
+     * @param amount 增加的值
+     */
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * 获取事件计数。
+     *
+     * @param counter 事件
+     * @return 计数
+     */
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * 注册一个只增不减的累计值（例如命中次数），以 counter 类型输出，指标名称以 _total 结尾（缺少时自动添加）。
+     * 输出指标时调用 supplier 获取当前值。
+     *
+     * @param name 指标名称
+     * @param help 指标说明
+     * @param supplier 当前值的提供者，必须是线程安全的
+     */
+    public void registerCounter(String name, String help, LongSupplier supplier) {
+        String metricName = name.endsWith("_total") ? name : name + "_total";
+        registeredCounters.add(new Registered(metricName, help, supplier));
+    }
+
+    /**
+     * 注册一个瞬时值（例如空闲连接数、占用的字节数），以 gauge 类型输出。输出指标时调用 supplier 获取当前值。
+     *
+     * @param name 指标名称
+     * @param help 指标说明
+     * @param supplier 当前值的提供者，必须是线程安全的
+     */
+    public void registerGauge(String name, String help, LongSupplier supplier) {
+        gauges.add(new Registered(name, help, supplier));
+    }
+
+    /**
+     * 以 Prometheus 文本格式（0.0.4）输出全部指标。阶段延迟以摘要（summary）类型输出，单位为秒。
+     *
+     * @param out 输出的目标
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP proxy_phase_seconds 代理处理各阶段的耗时\n");
+        out.append("# TYPE proxy_phase_seconds summary\n");
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = getHistogram(phase);
+            for (double quantile : QUANTILES) {
+                out.append("proxy_phase_seconds{phase=\"").append(phase.label).append("\",quantile=\"")
+                    .append(quantile).append("\"} ").append(toSeconds(histogram.getValueAtQuantile(quantile)))
+                    .append('\n');
+            }
+            out.append("proxy_phase_seconds_sum{phase=\"").append(phase.label).append("\"} ")
+                .append(toSeconds(histogram.getSumNanos())).append('\n');
+            out.append("proxy_phase_seconds_count{phase=\"").append(phase.label).append("\"} ")
+                .append(histogram.getCount()).append('\n');
+        }
+        for (Counter counter : Counter.values()) {
+            out.append("# HELP ").append(counter.metricName).append(' ').append(counter.help).append('\n');
+            out.append("# TYPE ").append(counter.metricName).append(" counter\n");
+            out.append(counter.metricName).append(' ').append(getCount(counter)).append('\n');
+        }
+        writeRegistered(out, registeredCounters, "counter");
+        writeRegistered(out, gauges, "gauge");
+    }
+
+    /**
+     * 输出注册的指标。
+     *
+     * @param out 输出的目标
+     * @param metrics 注册的指标
+     * @param type 指标类型
+     */
+    private static void writeRegistered(StringBuilder out, List<Registered> metrics, String type) {
+        for (Registered metric : metrics) {
+            out.append("# HELP ").append(metric.name()).append(' ').append(metric.help()).append('\n');
+            out.append("# TYPE ").append(metric.name()).append(' ').append(type).append('\n');
+            out.append(metric.name()).append(' ').append(metric.supplier().getAsLong()).append('\n');
+        }
+    }
+
+    /**
+     * 将纳秒转换为秒。
+     *
+     * @param nanos 纳秒
+     * @return 秒
+     */
+    private static double toSeconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /**
+     * 请求的处理阶段。
+     */
+    public enum Phase {
+
+        PARSE("parse"), // 读取并解析请求头（不含持久连接上等待下一个请求的空闲时间）
+        FILTER("filter"), // 网站过滤与重定向规则查询
+        CACHE_LOOKUP("cache_lookup"), // 查询缓存
+        UPSTREAM_CONNECT("upstream_connect"), // 从连接池获取或新建到目标服务器的连接
+        FIRST_BYTE("first_byte"), // 从开始发送请求到解析完目标服务器的响应头
+        BODY_TRANSFER("body_transfer"), // 读取目标服务器的响应体（流式转发时包括写给客户端）
+        CLIENT_WRITE("client_write"), // 向客户端写出响应头与已读取的响应体
+        TOTAL("total"); // 从收到请求的第一个字节到响应写出完成（不含 CONNECT 隧道）
+
+        private final String label; // 指标中的标签值
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * 计数的事件。
+     */
+    public enum Counter {
+
+        REQUESTS("proxy_requests_total", "处理的请求数"),
+        CACHE_HITS("proxy_cache_hits_total", "直接使用缓存响应、未访问目标服务器的请求数"),
+        CACHE_MISSES("proxy_cache_misses_total", "可使用缓存但未命中的请求数"),
+        CACHE_NOT_MODIFIED("proxy_cache_not_modified_total", "目标服务器返回 304、缓存验证通过的请求数"),
+        BLOCKED_SITES("proxy_blocked_sites_total", "因网站被禁止而拒绝的请求数"),
+        BLOCKED_USERS("proxy_blocked_users_total", "因用户被禁止而拒绝的连接数"),
+        REDIRECTS("proxy_redirects_total", "被重定向的请求数"),
+        UPSTREAM_ERRORS("proxy_upstream_errors_total", "与目标服务器通信失败的请求数"),
+        TUNNELS("proxy_tunnels_total", "建立的 CONNECT 隧道数"),
+        TUNNEL_BYTES_UP("proxy_tunnel_bytes_up_total", "隧道中客户端发往目标服务器的字节数"),
+        TUNNEL_BYTES_DOWN("proxy_tunnel_bytes_down_total", "隧道中目标服务器发往客户端的字节数");
+
+        private final String metricName; // 指标名称
+        private final String help; // 指标说明
+
+        Counter(String metricName, String help) {
+            this.metricName = metricName;
+            this.help = help;
+        }
+    }
+
+    /**
+     * 由其他组件注册的指标。
+     *
+     * @param name 指标名称
+     * @param help 指标说明
+     * @param supplier 当前值的提供者
+     */
+    private record Registered(String name, String help, LongSupplier supplier) {
+    }
+}
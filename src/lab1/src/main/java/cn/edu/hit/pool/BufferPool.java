@@ -0,0 +1,133 @@
+package cn.edu.hit.pool;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import cn.edu.hit.metrics.ProxyMetrics;
+
+/**
+ * 固定大小的字节缓冲区池。连接或请求在需要时租用缓冲区，处理完成后归还，稳定运行时转发数据不再分配新的缓冲区。
+ * <p>
+ * 池中最多保留 {@code maxIdle} 个空闲缓冲区：池为空时租用会新建缓冲区而不是等待，池已满时归还的缓冲区直接丢弃，
+ * 因此并发较高时短暂超出的缓冲区会在之后被回收，池本身占用的内存有上限。空闲缓冲区按后进先出的顺序复用，
+ * 最近使用过的缓冲区更可能仍在 CPU 缓存中。归还后调用方不能再使用该缓冲区。
+ */
+public class BufferPool {
+
+    private final Deque<ByteBuffer> idleBuffers = new ConcurrentLinkedDeque<>(); // 空闲缓冲区
+    private final AtomicInteger idleCount = new AtomicInteger(); // 空闲缓冲区数量（ConcurrentLinkedDeque.size 需要遍历）
+    private final int bufferSize; // 缓冲区大小
+    private final boolean direct; // 是否为直接缓冲区
+    private final int maxIdle; // 最多保留的空闲缓冲区数量
+    private final LongAdder allocations = new LongAdder(); // 新建缓冲区的次数
+    private final LongAdder reuses = new LongAdder(); // 复用缓冲区的次数
+
+    /**
+     * 构造函数。
+     *
+     * @param bufferSize 缓冲区大小
+     * @param direct 是否使用直接缓冲区：在通道之间传输数据时使用直接缓冲区，经由流读写时使用堆缓冲区（可以取得底层数组）
+     * @param maxIdle 最多保留的空闲缓冲区数量
+     */
+    public BufferPool(int bufferSize, boolean direct, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * 租用一个缓冲区，使用完毕后必须通过 {@link #release(ByteBuffer)} 归还。
+     *
+     * @return 已清空的缓冲区，容量为 {@link #getBufferSize()}
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idleBuffers.pollFirst();
+        if (buffer != null) {
+            idleCount.decrementAndGet();
+            reuses.increment();
+            return buffer.clear();
+        }
+        allocations.increment();
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * 归还一个缓冲区。不是由本池创建的缓冲区（容量或类型不同）被忽略。
+     *
+     * @param buffer 缓冲区，可以为 null
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet(); // 池已满，丢弃缓冲区
+            return;
+        }
+        idleBuffers.offerFirst(buffer);
+    }
+
+    /**
+     * 获取缓冲区大小。
+     *
+     * @return 缓冲区大小
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 获取新建缓冲区的次数。稳定运行时该值不再增长。
+     *
+     * @return 新建缓冲区的次数
+     */
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * 获取复用缓冲区的次数。
+     *
+     * @return 复用缓冲区的次数
+     */
+    public long getReuses() {
+        return reuses.sum();
+    }
+
+    /**
+     * 获取当前空闲缓冲区数量。
+     *
+     * @return 空闲缓冲区数量
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * 将缓冲区池的统计信息注册为运行指标。
+     *
+     * @param metrics 运行指标
+     * @param name 缓冲区池的名称，用作指标名称的一部分
+     */
+    public void registerMetrics(ProxyMetrics metrics, String name) {
+        metrics.registerCounter("proxy_buffer_pool_" + name + "_allocations_total", "缓冲区池新建缓冲区的次数",
+            this::getAllocations);
+        metrics.registerCounter("proxy_buffer_pool_" + name + "_reuses_total", "缓冲区池复用缓冲区的次数",
+            this::getReuses);
+        metrics.registerGauge("proxy_buffer_pool_" + name + "_idle", "缓冲区池中的空闲缓冲区数量", this::getIdleCount);
+    }
+
+    /**
+     * 返回统计信息的字符串表示形式。
+     *
+     * @return 统计信息
+     */
+    @Override
+    public String toString() {
+        return String.format("缓冲区大小: %d, 新建: %d, 复用: %d, 空闲: %d", bufferSize, getAllocations(), getReuses(),
+            getIdleCount());
+    }
+}
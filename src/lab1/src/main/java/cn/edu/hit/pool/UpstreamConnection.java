@@ -0,0 +1,122 @@
+package cn.edu.hit.pool;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import cn.edu.hit.utils.HttpInputStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 表示一个到目标服务器的连接，由 {@link UpstreamConnectionPool} 管理。
+ */
+@Slf4j
+public class UpstreamConnection {
+
+    private final String host; // 目标服务器主机名
+    private final int port; // 目标服务器端口
+    private final Socket socket; // 连接套接字
+    private HttpInputStream inputStream; // 连接的输入流，复用期间保留缓冲区中的数据
+    private boolean reused; // 是否是从连接池中复用的连接
+    private long idleSince; // 放回连接池的时间（毫秒）
+
+    /**
+     * 构造函数，包装一个新建立的连接。
+     *
+     * @param host 目标服务器主机名
+     * @param port 目标服务器端口
+     * @param socket 连接套接字
+     */
+    UpstreamConnection(String host, int port, Socket socket) {
+        this.host = host;
+        this.port = port;
+        this.socket = socket;
+    }
+
+    /**
+     * 获取目标服务器主机名。
+     *
+     * @return 目标服务器主机名
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 获取目标服务器端口。
+     *
+     * @return 目标服务器端口
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 获取连接套接字。
+     *
+     * @return 连接套接字
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * 获取连接的输入流。同一连接上的响应头部和消息体都必须通过该输入流读取。
+     *
+     * @return 连接的输入流
+     * @throws IOException 如果获取输入流失败
+     */
+    public HttpInputStream getInputStream() throws IOException {
+        if (inputStream == null) {
+            inputStream = new HttpInputStream(socket.getInputStream());
+        }
+        return inputStream;
+    }
+
+    /**
+     * 判断该连接是否是从连接池中复用的。复用的连接可能已被目标服务器关闭，请求失败时可以换新连接重试。
+     *
+     * @return 如果是复用的连接则返回 true
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * 获取连接池的键。
+     *
+     * @return host:port 形式的键
+     */
+    String key() {
+        return UpstreamConnectionPool.key(host, port);
+    }
+
+    /**
+     * 标记连接被放回连接池。
+     *
+     * @param now 当前时间（毫秒）
+     */
+    void markIdle(long now) {
+        idleSince = now;
+        reused = true;
+    }
+
+    /**
+     * 获取放回连接池的时间。
+     *
+     * @return 放回连接池的时间（毫秒）
+     */
+    long getIdleSince() {
+        return idleSince;
+    }
+
+    /**
+     * 关闭连接。
+     */
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.error("关闭连接失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package cn.edu.hit.pool;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import cn.edu.hit.config.ProxyConfig;
+import cn.edu.hit.metrics.ProxyMetrics;
+import cn.edu.hit.utils.HttpUtils;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 目标服务器连接池，按 host:port 缓存空闲的持久连接，避免每个请求都重新进行 TCP 握手。
+ */
+@Slf4j
+public class UpstreamConnectionPool {
+
+    private final Map<String, Deque<UpstreamConnection>> idleConnections = new ConcurrentHashMap<>(); // 空闲连接
+    private final int maxIdlePerHost; // 每个目标服务器最多保留的空闲连接数
+    private final long idleTimeoutMillis; // 空闲连接超时时间
+    private final LongAdder hits = new LongAdder(); // 复用连接次数
+    private final LongAdder misses = new LongAdder(); // 新建连接次数
+    private final LongAdder evictions = new LongAdder(); // 淘汰连接次数
+
+    /**
+     * 构造函数，初始化连接池并启动后台清理任务。
+     *
+     * @param maxIdlePerHost 每个目标服务器最多保留的空闲连接数
+     * @param idleTimeoutMillis 空闲连接超时时间
+     */
+    public UpstreamConnectionPool(int maxIdlePerHost, long idleTimeoutMillis) {
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upstream-pool-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutMillis / 2, 1);
+        cleaner.scheduleAtFixedRate(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+        log.info("初始化连接池，每个目标服务器最多空闲连接数: {}, 空闲超时: {}ms", maxIdlePerHost, idleTimeoutMillis);
+    }
+
+    /**
+     * 默认构造函数，使用配置的连接数上限和空闲超时时间。
+     */
+    public UpstreamConnectionPool() {
+        this(ProxyConfig.UPSTREAM_MAX_IDLE_PER_HOST, ProxyConfig.UPSTREAM_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 生成连接池的键。
+     *
+     * @param host 目标服务器主机名
+     * @param port 目标服务器端口
+     * @return host:port 形式的键
+     */
+    static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    /**
+     * 获取到目标服务器的连接，优先复用空闲且存活的连接，否则新建连接。
+     *
+     * @param host 目标服务器主机名
+     * @param port 目标服务器端口
+     * @return 到目标服务器的连接
+     * @throws IOException 如果新建连接失败
+     */
+    public UpstreamConnection acquire(String host, int port) throws IOException {
+        Deque<UpstreamConnection> deque = idleConnections.get(key(host, port));
+        if (deque != null) {
+            long now = System.currentTimeMillis();
+            UpstreamConnection connection;
+            // 后进先出，优先使用最近放回的连接
+            while ((connection = deque.pollFirst()) != null) {
+                if (now - connection.getIdleSince() <= idleTimeoutMillis && isAlive(connection)) {
+                    hits.increment();
+                    return connection;
+                }
+                evictions.increment();
+                connection.close();
+            }
+        }
+        return connect(host, port);
+    }
+
+    /**
+     * 新建到目标服务器的连接，不复用连接池中的空闲连接。
+     *
+     * @param host 目标服务器主机名
+     * @param port 目标服务器端口
+     * @return 到目标服务器的连接
+     * @throws IOException 如果新建连接失败
+     */
+    public UpstreamConnection connect(String host, int port) throws IOException {
+        misses.increment();
+        return new UpstreamConnection(host, port, HttpUtils.connectToServer(host, port));
+    }
+
+    /**
+     * 将连接放回连接池。只有在完整读取了响应且目标服务器同意保持连接时才能放回。
+     *
+     * @param connection 要放回的连接
+     */
+    public void release(UpstreamConnection connection) {
+        Socket socket = connection.getSocket();
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return;
+        }
+        Deque<UpstreamConnection> deque =
+            idleConnections.computeIfAbsent(connection.key(), key -> new ConcurrentLinkedDeque<>());
+        if (deque.size() >= maxIdlePerHost) {
+            evictions.increment();
+            connection.close();
+            return;
+        }
+        connection.markIdle(System.currentTimeMillis());
+        deque.offerFirst(connection);
+    }
+
+    /**
+     * 丢弃连接（例如发生错误或目标服务器要求关闭连接）。
+     *
+     * @param connection 要丢弃的连接
+     */
+    public void discard(UpstreamConnection connection) {
+        connection.close();
+    }
+
+    /**
+     * 淘汰所有超过空闲超时时间的连接。
+     */
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        long evicted = 0;
+        for (Deque<UpstreamConnection> deque : idleConnections.values()) {
+            UpstreamConnection connection;
+            // 最久未使用的连接位于队尾
+            while ((connection = deque.peekLast()) != null && now - connection.getIdleSince() > idleTimeoutMillis) {
+                if (deque.removeLastOccurrence(connection)) {
+                    connection.close();
+                    evicted++;
+                }
+            }
+        }
+        if (evicted > 0) {
+            evictions.add(evicted);
+            log.info("淘汰空闲超时连接 {} 个，{}", evicted, this);
+        }
+    }
+
+    /**
+     * 检查空闲连接是否仍然可用：连接未关闭，且目标服务器没有关闭连接或发送意外的数据。
+     * <p>
+     * 检查不会阻塞：先查看输入流的缓冲区，再将通道临时切换为非阻塞模式尝试读取一个字节，没有数据可读时连接仍然存活。
+     *
+     * @param connection 空闲连接
+     * @return 如果连接可用则返回 true
+     */
+    private static boolean isAlive(UpstreamConnection connection) {
+        Socket socket = connection.getSocket();
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        try {
+            if (connection.getInputStream().buffered() > 0) {
+                return false; // 缓冲区中残留上一个响应之后的数据，连接状态异常
+            }
+            SocketChannel channel = socket.getChannel();
+            if (channel == null) {
+                return socket.getInputStream().available() == 0; // 没有通道时无法发现 EOF，只检查意外的数据
+            }
+            channel.configureBlocking(false);
+            try {
+                // 读到 EOF 表示已关闭，读到数据表示连接状态异常，两者都不能复用
+                return channel.read(ByteBuffer.allocate(1)) == 0;
+            } finally {
+                channel.configureBlocking(true);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取复用连接的次数。
+     *
+     * @return 复用连接的次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 获取新建连接的次数。
+     *
+     * @return 新建连接的次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 获取淘汰连接的次数（空闲超时、存活检查失败或超出每个目标服务器的上限）。
+     *
+     * @return 淘汰连接的次数
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 获取当前空闲连接总数。
+     *
+     * @return 空闲连接总数
+     */
+    public int getIdleCount() {
+        return idleConnections.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    /**
+     * 将连接池的统计信息注册为运行指标。
+     *
+     * @param metrics 运行指标
+     */
+    public void registerMetrics(ProxyMetrics metrics) {
+        metrics.registerCounter("proxy_upstream_pool_hits_total", "复用目标服务器连接的次数", this::getHits);
+        metrics.registerCounter("proxy_upstream_pool_misses_total", "新建目标服务器连接的次数", this::getMisses);
+        metrics.registerCounter("proxy_upstream_pool_evictions_total", "淘汰目标服务器连接的次数", this::getEvictions);
+        metrics.registerGauge("proxy_upstream_pool_idle", "空闲的目标服务器连接数", this::getIdleCount);
+    }
+
+    /**
+     * 返回连接池统计信息的字符串表示形式。
+     *
+     * @return 统计信息
+     */
+    @Override
+    public String toString() {
+        return String.format("命中: %d, 未命中: %d, 淘汰: %d, 空闲连接: %d", getHits(), getMisses(), getEvictions(),
+            getIdleCount());
+    }
+}
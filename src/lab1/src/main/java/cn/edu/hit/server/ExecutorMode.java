@@ -0,0 +1,34 @@
+package cn.edu.hit.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 代理处理器的执行模式，决定每个 {@link ProxyHandler} 运行在哪种线程上。
+ */
+public enum ExecutorMode {
+
+    /**
+     * 平台线程池。使用固定大小的平台线程池，并发连接数超过线程数时新连接需要排队等待。
+     */
+    PLATFORM,
+
+    /**
+     * 虚拟线程。每个连接运行在独立的虚拟线程上，阻塞 I/O 不会占用平台线程。
+     */
+    VIRTUAL;
+
+    /**
+     * 根据执行模式创建对应的执行器。
+     *
+     * @param threadPoolSize 线程池大小，仅对平台线程池模式有效
+     * @return 执行器
+     */
+    public ExecutorService newExecutor(int threadPoolSize) {
+        return switch (this) {
+            case PLATFORM -> Executors.newFixedThreadPool(threadPoolSize,
+                Thread.ofPlatform().name("proxy-handler-", 0).factory());
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("proxy-handler-", 0).factory());
+        };
+    }
+}
@@ -1,60 +1,94 @@
 package cn.edu.hit.server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.Map;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+
+import cn.edu.hit.config.ProxyConfig;
+import cn.edu.hit.filter.FilterManager;
+import cn.edu.hit.metrics.MetricsServer;
+import cn.edu.hit.metrics.ProxyMetrics;
+import cn.edu.hit.metrics.ProxyMetrics.Counter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * HTTP 代理服务器类，负责监听客户端请求并将其转发到目标服务器。
  */
+@Slf4j
 public class HttpProxyServer {
 
     private static final int DEFAULT_THREAD_POOL_SIZE = 20; // 默认线程池大小
     private static final int DEFAULT_PROXY_PORT = 20000; // 默认代理服务器端口
     private final ExecutorService threadPool; // 线程池
+    private final ExecutorMode executorMode; // 执行模式
     private final int threadPoolSize; // 线程池大小
     private final int proxyPort; // 代理服务器端口
 
     /**
      * 构造函数，初始化代理服务器。
      *
-     * @param threadPoolSize 线程池大小
+     * @param executorMode 执行模式
+     * @param threadPoolSize 线程池大小，仅对平台线程池模式有效
      * @param proxyPort 代理服务器端口
      */
-    public HttpProxyServer(int threadPoolSize, int proxyPort) {
+    public HttpProxyServer(ExecutorMode executorMode, int threadPoolSize, int proxyPort) {
+        this.executorMode = executorMode;
         this.threadPoolSize = threadPoolSize;
         this.proxyPort = proxyPort;
-        threadPool = Executors.newFixedThreadPool(threadPoolSize); // 创建线程池
-        System.out.println("[HttpProxyServer] 初始化线程池，大小: " + threadPoolSize + ", 监听端口: " + proxyPort);
+        threadPool = executorMode.newExecutor(threadPoolSize); // 创建线程池
+        log.info("初始化线程池，模式: {}, 大小: {}, 监听端口: {}", executorMode, threadPoolSize, proxyPort);
+    }
+
+    /**
+     * 构造函数，使用平台线程池初始化代理服务器。
+     *
+     * @param threadPoolSize 线程池大小
+     * @param proxyPort 代理服务器端口
+     */
+    public HttpProxyServer(int threadPoolSize, int proxyPort) {
+        this(ExecutorMode.PLATFORM, threadPoolSize, proxyPort);
+    }
+
+    /**
+     * 构造函数，使用指定执行模式、默认线程池大小和端口。
+     *
+     * @param executorMode 执行模式
+     */
+    public HttpProxyServer(ExecutorMode executorMode) {
+        this(executorMode, DEFAULT_THREAD_POOL_SIZE, DEFAULT_PROXY_PORT);
     }
 
     /**
-     * 默认构造函数，使用默认线程池大小和端口。
+     * 默认构造函数，使用平台线程池、默认线程池大小和端口。
      */
     public HttpProxyServer() {
-        threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
-        proxyPort = DEFAULT_PROXY_PORT;
-        threadPool = Executors.newFixedThreadPool(threadPoolSize); // 创建线程池
-        System.out.println("[HttpProxyServer] 初始化默认线程池，大小: " + threadPoolSize + ", 监听端口: " + proxyPort);
+        this(ExecutorMode.PLATFORM);
     }
 
     /**
-     * 主方法，启动代理服务器。
+     * 主方法，启动代理服务器。第一个参数选择运行模式：{@code nio} 使用基于 Selector 的非阻塞模式，{@code virtual}
+     * 为每个连接使用虚拟线程，{@code platform}（默认）使用固定大小的平台线程池。
      *
      * @param args 命令行参数
      */
     public static void main(String[] args) {
-        Set<String> blockedSites = Set.of("www.hit.edu.cn");
+        Set<String> blockedSites = Set.of(".www.hit.edu.cn");
         Set<String> blockedUsers = Set.of("127.0.0.2");
         Map<String, String> redirectSites = Map.of("jwes.hit.edu.cn", "jwts.hit.edu.cn");
+        String mode = args.length > 0 ? args[0] : ExecutorMode.PLATFORM.name();
         try {
-            new HttpProxyServer().start(blockedSites, blockedUsers, redirectSites);
+            if ("nio".equalsIgnoreCase(mode)) {
+                new NioProxyServer().start(blockedSites, blockedUsers, redirectSites);
+                return;
+            }
+            new HttpProxyServer(ExecutorMode.valueOf(mode.toUpperCase())).start(blockedSites, blockedUsers,
+                redirectSites);
         } catch (IOException e) {
-            System.err.println("[HttpProxyServer] 代理服务器启动失败: " + e.getMessage());
+            log.error("代理服务器启动失败: {}", e.getMessage());
         }
     }
 
@@ -68,19 +102,7 @@ public class HttpProxyServer {
      */
     public void start(Set<String> blockedSites, Set<String> blockedUsers, Map<String, String> redirectSites)
         throws IOException {
-        try (ServerSocket proxyServerSocket = new ServerSocket(proxyPort)) { // 创建ServerSocket监听端口
-            System.out.println("[HttpProxyServer] 代理服务器正在运行，监听端口: " + proxyPort);
-            while (true) {
-                // 接收客户端连接
-                Socket clientSocket = proxyServerSocket.accept();
-                System.out.println("[HttpProxyServer] 接收到客户端连接: " + clientSocket.getRemoteSocketAddress());
-                // 提交任务到线程池
-                threadPool.submit(new ProxyHandler(clientSocket, blockedSites, blockedUsers, redirectSites));
-            }
-        } catch (IOException e) {
-            System.err.println("[HttpProxyServer] 服务器异常: " + e.getMessage());
-            throw e;
-        }
+        start(new FilterManager(blockedSites, blockedUsers, redirectSites));
     }
 
     /**
@@ -89,17 +111,38 @@ public class HttpProxyServer {
      * @throws IOException 如果发生 I/O 错误
      */
     public void start() throws IOException {
-        try (ServerSocket proxyServerSocket = new ServerSocket(proxyPort)) { // 创建ServerSocket监听端口
-            System.out.println("[HttpProxyServer] 代理服务器正在运行，监听端口: " + proxyPort);
+        start(new FilterManager());
+    }
+
+    /**
+     * 监听端口并将每个客户端连接提交到线程池处理。
+     *
+     * @param filterManager 所有连接共享的过滤器管理器
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void start(FilterManager filterManager) throws IOException {
+        ProxyHandler.registerMetrics();
+        MetricsServer.startIfEnabled(ProxyConfig.METRICS_PORT);
+        // 通过 ServerSocketChannel 监听端口，使客户端套接字带有通道，以便转发响应体时可以在通道之间直接传输
+        try (ServerSocketChannel proxyServerChannel = ServerSocketChannel.open()) {
+            proxyServerChannel.bind(new InetSocketAddress(proxyPort));
+            log.info("代理服务器正在运行，监听端口: {}", proxyPort);
             while (true) {
                 // 接收客户端连接
-                Socket clientSocket = proxyServerSocket.accept();
-                System.out.println("[HttpProxyServer] 接收到客户端连接: " + clientSocket.getRemoteSocketAddress());
+                Socket clientSocket = proxyServerChannel.accept().socket();
+                log.debug("接收到客户端连接: {}", clientSocket.getRemoteSocketAddress());
+                // 在接收连接时过滤用户，被禁止的用户不占用线程池
+                if (filterManager.isUserBlocked(clientSocket.getInetAddress())) {
+                    log.info("该用户已被禁止访问: {}", clientSocket.getInetAddress().getHostAddress());
+                    ProxyMetrics.getInstance().increment(Counter.BLOCKED_USERS);
+                    clientSocket.close();
+                    continue;
+                }
                 // 提交任务到线程池
-                threadPool.submit(new ProxyHandler(clientSocket));
+                threadPool.submit(new ProxyHandler(clientSocket, filterManager));
             }
         } catch (IOException e) {
-            System.err.println("[HttpProxyServer] 服务器异常: " + e.getMessage());
+            log.error("服务器异常: {}", e.getMessage());
             throw e;
         }
     }
@@ -0,0 +1,125 @@
+package cn.edu.hit.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * NIO 事件循环，单个线程通过一个 Selector 处理其上注册的全部客户端与目标服务器连接。
+ */
+@Slf4j
+class NioEventLoop implements Runnable {
+
+    private static final long SELECT_TIMEOUT_MILLIS = 1000; // 单次 select 的最长阻塞时间
+    private static final int READ_BUFFER_SIZE = 16 * 1024; // 共享读缓冲区大小
+
+    private final Selector selector; // 多路复用选择器
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // 其他线程提交的任务
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE); // 本循环内所有连接共享的读缓冲区
+    private final Thread thread; // 事件循环线程
+
+    /**
+     * 构造函数，创建事件循环及其线程（尚未启动）。
+     *
+     * @param name 线程名称
+     * @throws IOException 如果无法打开 Selector
+     */
+    NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    /**
+     * 启动事件循环线程。
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * 提交任务到事件循环线程执行，并唤醒 Selector。
+     *
+     * @param task 要执行的任务
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * 获取事件循环的 Selector。
+     *
+     * @return Selector
+     */
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * 获取事件循环共享的读缓冲区，仅可在事件循环线程内使用。
+     *
+     * @return 已清空的读缓冲区
+     */
+    ByteBuffer readBuffer() {
+        return readBuffer.clear();
+    }
+
+    /**
+     * 事件循环主体：等待就绪事件、执行提交的任务并检查连接超时。
+     */
+    @Override
+    public void run() {
+        long lastSweep = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                log.error("select 失败: {}", e.getMessage());
+                break;
+            }
+
+            // 执行其他线程提交的任务（例如注册新连接）
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            // 分发就绪事件
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                NioProxyConnection connection = (NioProxyConnection)key.attachment();
+                try {
+                    connection.handle(key);
+                } catch (Exception e) {
+                    log.error("处理连接时发生错误: {}", e.getMessage());
+                    connection.close();
+                }
+            }
+
+            // 定期检查超时连接
+            long now = System.currentTimeMillis();
+            if (now - lastSweep >= SELECT_TIMEOUT_MILLIS) {
+                lastSweep = now;
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioProxyConnection connection && connection.isExpired(now)) {
+                        log.debug("连接超时");
+                        try {
+                            connection.onTimeout();
+                        } catch (IOException e) {
+                            log.error("处理超时连接时发生错误: {}", e.getMessage());
+                            connection.close();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,1051 @@
+package cn.edu.hit.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import cn.edu.hit.cache.CacheManager;
+import cn.edu.hit.cache.CacheWriter;
+import cn.edu.hit.cache.CachePolicy;
+import cn.edu.hit.cache.CachedResponse;
+import cn.edu.hit.config.ProxyConfig;
+import cn.edu.hit.core.HttpConstant;
+import cn.edu.hit.core.HttpHeaders;
+import cn.edu.hit.core.HttpRequest;
+import cn.edu.hit.core.HttpResponse;
+import cn.edu.hit.core.HttpStatus;
+import cn.edu.hit.filter.FilterManager;
+import cn.edu.hit.filter.FilterRules;
+import cn.edu.hit.metrics.ProxyMetrics;
+import cn.edu.hit.metrics.ProxyMetrics.Counter;
+import cn.edu.hit.metrics.ProxyMetrics.Phase;
+import cn.edu.hit.pool.BufferPool;
+import cn.edu.hit.utils.ChunkedDecoder;
+import cn.edu.hit.utils.HttpInputStream;
+import cn.edu.hit.utils.HttpUtils;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 非阻塞代理连接，以状态机的方式驱动一个客户端连接及其对应的目标服务器连接。
+ */
+@Slf4j
+class NioProxyConnection {
+
+    private static final int MAX_HEADER_SIZE = 64 * 1024; // 允许的最大头部大小
+    private static final long IDLE_TIMEOUT_MILLIS = 60000; // 等待客户端请求的空闲超时时间
+    private static final long READ_TIMEOUT_MILLIS = ProxyConfig.UPSTREAM_READ_TIMEOUT_MILLIS; // 等待目标服务器响应的超时时间
+    private static final int DATA_BUFFER_SIZE = 16 * 1024; // 已读取的请求与响应头数据使用的缓冲区大小，超出时换用更大的数组
+    private static final int MAX_TRANSFERS_PER_EVENT = 16; // 每次事件最多转发的轮数，避免一个连接长时间占用事件循环
+    private static final byte[] HEADER_TERMINATOR = {'\r', '\n', '\r', '\n'}; // 头部结束标志
+    private static final ProxyMetrics metrics = ProxyMetrics.getInstance(); // 全局运行指标
+    // 已读取的请求与响应头数据使用的堆缓冲区池，所有连接共享；连接只在有未处理的数据时持有缓冲区
+    static final BufferPool DATA_BUFFERS = new BufferPool(DATA_BUFFER_SIZE, false, ProxyConfig.BUFFER_POOL_MAX_IDLE);
+    private static final ExecutorService blockingExecutor = new ThreadPoolExecutor(ProxyConfig.NIO_BLOCKING_THREADS,
+        ProxyConfig.NIO_BLOCKING_THREADS, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(ProxyConfig.NIO_BLOCKING_QUEUE_SIZE),
+        Thread.ofPlatform().name("nio-blocking-", 0).daemon().factory()); // 执行阻塞操作的线程池，所有事件循环共享
+
+    private final NioEventLoop eventLoop; // 所属事件循环
+    private final SocketChannel clientChannel; // 客户端通道
+    private final FilterManager filterManager; // 过滤器管理器
+    private final CacheManager cacheManager; // 缓存管理器
+    private SelectionKey clientKey; // 客户端通道的选择键
+    private SocketChannel serverChannel; // 目标服务器通道
+    private SelectionKey serverKey; // 目标服务器通道的选择键
+    private State state = State.READING_REQUEST; // 当前状态
+    private long deadline; // 当前状态的截止时间
+    private boolean closed; // 是否已关闭
+
+    private ByteBuffer clientData; // 已读取、尚未处理的客户端数据（使用底层数组），没有数据时为 null
+    private int clientDataLength; // 客户端数据长度
+    private ByteBuffer serverData; // 已读取的目标服务器响应头及其后的数据（使用底层数组），没有数据时为 null
+    private int serverDataLength; // 目标服务器数据长度
+    private int serverDataOffset; // 响应头之后已读取、尚未转发的响应体数据的起始位置
+    private ByteBuffer[] pendingRequest; // 待写入目标服务器的请求（请求头与请求体）
+    private ByteBuffer[] pendingResponse; // 待写入客户端的响应（响应头与响应体），流式转发时只包含响应头
+    private ByteBuffer relayBuffer; // 流式转发响应体的中转缓冲区（读模式），从缓冲区池租用
+    private long bodyRemaining; // 固定长度响应体尚未读取的长度，-1 表示分块传输或以关闭连接作为结束
+    private ChunkedDecoder chunkedDecoder; // 分块传输响应体的解码器，用于查找响应体结尾并向缓存写入器输出解码后的数据
+    private boolean bodyComplete; // 响应体是否已全部读入中转缓冲区
+    private CacheWriter cacheWriter; // 可缓存响应的缓存写入器，不可缓存时为 null
+
+    private int requestCount; // 已处理的请求数
+    private long requestStart; // 当前请求开始处理的时刻（纳秒）
+    private boolean keepAlive; // 当前请求完成后是否保持连接
+    private HttpRequest request; // 当前请求，用于计算缓存键
+    private CachedResponse cachedResponse; // 当前请求命中且需要验证的缓存，响应体已读入 cachedHttpResponse
+    private HttpResponse cachedHttpResponse; // 当前请求命中的缓存响应
+    private Tunnel tunnel; // CONNECT 隧道，建立后连接只转发字节
+
+    /**
+     * 构造函数，初始化非阻塞代理连接。
+     *
+     * @param eventLoop 所属事件循环
+     * @param clientChannel 客户端通道
+     * @param filterManager 过滤器管理器
+     * @param cacheManager 缓存管理器
+     */
+    NioProxyConnection(NioEventLoop eventLoop, SocketChannel clientChannel, FilterManager filterManager,
+        CacheManager cacheManager) {
+        this.eventLoop = eventLoop;
+        this.clientChannel = clientChannel;
+        this.filterManager = filterManager;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * 将客户端通道注册到事件循环，必须在事件循环线程内调用。
+     *
+     * @throws IOException 如果发生 I/O 错误
+     */
+    void register() throws IOException {
+        clientKey = clientChannel.register(eventLoop.selector(), SelectionKey.OP_READ, this);
+        deadline = System.currentTimeMillis() + IDLE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * 处理就绪事件。
+     *
+     * @param key 就绪的选择键
+     * @throws IOException 如果发生 I/O 错误
+     */
+    void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (state == State.TUNNELING) {
+            onTunnelReady();
+            return;
+        }
+        if (key == clientKey) {
+            if (key.isReadable()) {
+                onClientReadable();
+            } else if (key.isWritable()) {
+                onClientWritable();
+            }
+        } else if (key == serverKey) {
+            if (key.isConnectable()) {
+                onServerConnectable();
+            } else if (key.isWritable()) {
+                onServerWritable();
+            } else if (key.isReadable()) {
+                onServerReadable();
+            }
+        }
+    }
+
+    /**
+     * 检查当前连接是否超时。
+     *
+     * @param now 当前时间
+     * @return 如果超时则返回 true
+     */
+    boolean isExpired(long now) {
+        return !closed && now > deadline;
+    }
+
+    /**
+     * 当前状态已超时。等待目标服务器时按目标服务器不可用处理，其他状态直接关闭连接。
+     *
+     * @throws IOException 如果发生 I/O 错误
+     */
+    void onTimeout() throws IOException {
+        if (state != State.PREPARING && state != State.CONNECTING && state != State.WRITING_REQUEST
+            && state != State.READING_RESPONSE) {
+            close();
+            return;
+        }
+        onUpstreamFailed(new SocketTimeoutException("等待目标服务器响应超时"));
+    }
+
+    /**
+     * 目标服务器不可用（连接失败、写出请求失败、超时或在响应头之前关闭连接）。此时尚未向客户端写出任何数据，
+     * 如果允许则返回过期的缓存，否则超时时返回 504 Gateway Timeout，其他情况返回 502 Bad Gateway。
+     *
+     * @param cause 失败原因
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void onUpstreamFailed(IOException cause) throws IOException {
+        closeServer();
+        metrics.increment(Counter.UPSTREAM_ERRORS);
+        long now = System.currentTimeMillis();
+        HttpResponse httpResponse;
+        if (cachedResponse != null && CachePolicy.canServeStaleIfError(request, cachedResponse, now)) {
+            log.warn("目标服务器不可用，返回过期的缓存响应: {}", cause.getMessage());
+            httpResponse = cachedHttpResponse.updateHeader("Age", String.valueOf(cachedResponse.getAge(now)));
+        } else {
+            HttpStatus status = cause instanceof SocketTimeoutException ? HttpStatus.GATEWAY_TIMEOUT
+                : HttpStatus.BAD_GATEWAY;
+            log.warn("目标服务器不可用，返回 {}: {}", status.getCode(), cause.getMessage());
+            httpResponse = HttpUtils.createErrorResponse(status);
+        }
+        cachedResponse = null;
+        cachedHttpResponse = null;
+        sendResponse(httpResponse);
+    }
+
+    /**
+     * 关闭客户端与目标服务器连接。
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeServer();
+        releaseRelayBuffer();
+        releaseServerData();
+        DATA_BUFFERS.release(clientData);
+        clientData = null;
+        if (tunnel != null) {
+            tunnel.release();
+        }
+        try {
+            clientChannel.close();
+        } catch (IOException e) {
+            log.error("关闭客户端连接失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 客户端可读：读取请求数据并尝试解析完整的请求。
+     */
+    private void onClientReadable() throws IOException {
+        ByteBuffer buffer = eventLoop.readBuffer();
+        int bytesRead = clientChannel.read(buffer);
+        if (bytesRead == -1) {
+            close();
+            return;
+        }
+        buffer.flip();
+        clientData = append(clientData, clientDataLength, buffer);
+        clientDataLength += bytesRead;
+        if (state == State.READING_REQUEST) {
+            tryParseRequest();
+        }
+    }
+
+    /**
+     * 尝试从已读取的客户端数据中解析出一个完整的请求。
+     */
+    private void tryParseRequest() throws IOException {
+        if (clientData == null) {
+            return;
+        }
+        int headerEnd = indexOf(clientData.array(), 0, clientDataLength, HEADER_TERMINATOR);
+        if (headerEnd == -1) {
+            if (clientDataLength > MAX_HEADER_SIZE) {
+                log.warn("请求头过大，关闭连接");
+                close();
+            }
+            return;
+        }
+        int headerLength = headerEnd + HEADER_TERMINATOR.length;
+        HttpHeaders headers = parseHeaders(clientData.array(), headerLength);
+        int totalLength = headerLength;
+        if (headers.contains("Content-Length")) {
+            long contentLength = parseContentLength(headers.get("Content-Length"));
+            if (contentLength < 0) {
+                log.warn("请求的 Content-Length 无效，返回 400: {}", headers.get("Content-Length"));
+                rejectRequest(HttpStatus.BAD_REQUEST);
+                return;
+            }
+            if (contentLength > ProxyConfig.NIO_MAX_REQUEST_BODY_BYTES
+                || contentLength > Integer.MAX_VALUE - headerLength) {
+                log.warn("请求体过大，返回 413: {} 字节", contentLength);
+                rejectRequest(HttpStatus.PAYLOAD_TOO_LARGE);
+                return;
+            }
+            totalLength += (int)contentLength;
+        }
+        if (clientDataLength < totalLength) {
+            return; // 请求体尚未完整到达
+        }
+
+        HttpRequest httpRequest =
+            HttpUtils.parseHttpRequest(
+                new HttpInputStream(new ByteArrayInputStream(clientData.array(), 0, totalLength)));
+        consume(totalLength);
+        processRequest(httpRequest);
+    }
+
+    /**
+     * 解析请求的 Content-Length，字段值只能由数字组成。
+     *
+     * @param value 字段值
+     * @return 请求体长度，超出 long 范围时返回 Long.MAX_VALUE，格式无效时返回 -1
+     */
+    private static long parseContentLength(String value) {
+        String digits = value.strip();
+        if (digits.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            if (digits.charAt(i) < '0' || digits.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return digits.length() > 18 ? Long.MAX_VALUE : Long.parseLong(digits);
+    }
+
+    /**
+     * 拒绝无法处理的请求：返回错误响应，写完后关闭连接，不再读取该请求的请求体与之后的请求。
+     *
+     * @param status 响应状态码
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void rejectRequest(HttpStatus status) throws IOException {
+        keepAlive = false;
+        requestStart = System.nanoTime();
+        pendingResponse = HttpUtils.encodeHttpResponse(
+            HttpUtils.setConnectionHeaders(HttpUtils.createErrorResponse(status), false));
+        clientKey.interestOps(SelectionKey.OP_WRITE);
+        enterState(State.WRITING_RESPONSE, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 对完整的请求执行过滤、重定向与缓存逻辑，并发起到目标服务器的非阻塞连接。
+     *
+     * @param httpRequest 客户端请求
+     */
+    private void processRequest(HttpRequest httpRequest) throws IOException {
+        String host = httpRequest.getHost();
+        requestCount++;
+        requestStart = System.nanoTime();
+        metrics.increment(Counter.REQUESTS);
+
+        // 过滤逻辑，同一请求使用同一个规则快照
+        FilterRules rules = filterManager.getRules();
+        boolean blocked = rules.isSiteBlocked(host);
+        String redirectSite = blocked ? null : rules.getRedirect(host);
+        metrics.recordSince(Phase.FILTER, requestStart);
+        if (blocked) {
+            log.info("该网站已被禁止访问: {}", host);
+            metrics.increment(Counter.BLOCKED_SITES);
+            close();
+            return;
+        }
+
+        if ("CONNECT".equalsIgnoreCase(httpRequest.getMethod())) {
+            connectTunnel(httpRequest);
+            return;
+        }
+
+        if (httpRequest.getPort() != HttpConstant.HTTP_DEFAULT_PORT) {
+            log.warn("仅支持 http 形式的请求目标与 CONNECT 隧道，端口: {}", httpRequest.getPort());
+            close();
+            return;
+        }
+
+        keepAlive = requestCount < HttpConstant.DEFAULT_KEEP_ALIVE_MAX_REQUESTS && HttpUtils.isKeepAlive(httpRequest);
+
+        // 检查是否有网站重定向规则
+        if (redirectSite != null) {
+            log.debug("该网站 [{}] 已被重定向至: [{}]", host, redirectSite);
+            metrics.increment(Counter.REDIRECTS);
+            httpRequest = httpRequest.updateHeader("Host", redirectSite);
+        }
+
+        request = httpRequest;
+        log.info("正在处理请求: {}", httpRequest.getUri());
+        cachedResponse = null;
+        cachedHttpResponse = null;
+
+        // 查找缓存可能读取磁盘，解析目标服务器地址可能查询 DNS，都交给阻塞任务线程池，等待期间不再读取客户端数据
+        clientKey.interestOps(0);
+        enterState(State.PREPARING, HttpConstant.DEFAULT_CONNECT_TIMEOUT);
+        HttpRequest lookupRequest = httpRequest;
+        offload(() -> lookup(lookupRequest), this::onLookupDone);
+    }
+
+    /**
+     * 在阻塞任务线程池中查找缓存；缓存不能直接返回时解析目标服务器地址。只读取共享的缓存管理器，不修改连接的状态。
+     *
+     * @param httpRequest 客户端请求
+     * @return 查找结果
+     */
+    private Lookup lookup(HttpRequest httpRequest) {
+        if (CachePolicy.canUseCache(httpRequest)) {
+            long lookupStart = System.nanoTime();
+            try (CachedResponse hit = cacheManager.get(httpRequest)) {
+                metrics.recordSince(Phase.CACHE_LOOKUP, lookupStart);
+                if (hit == null) {
+                    metrics.increment(Counter.CACHE_MISSES);
+                }
+                if (hit != null && CachePolicy.isFresh(httpRequest, hit, System.currentTimeMillis())) {
+                    // 缓存仍然新鲜，直接返回给客户端，不连接目标服务器
+                    log.debug("缓存命中且仍然新鲜，直接返回缓存响应: {}", httpRequest.getUri());
+                    metrics.increment(Counter.CACHE_HITS);
+                    HttpResponse fresh = hit.toHttpResponse()
+                        .updateHeader("Age", String.valueOf(hit.getAge(System.currentTimeMillis())));
+                    return new Lookup(fresh, null, null, null);
+                }
+                if (hit != null && CachePolicy.hasValidator(hit.getHead())) {
+                    // 响应需要整体放入写缓冲区，因此直接读取完整的缓存响应
+                    HttpResponse cached = hit.toHttpResponse();
+                    return new Lookup(null, hit, cached, resolve(httpRequest.getHost(), httpRequest.getPort()));
+                }
+            } catch (IOException e) {
+                log.warn("读取缓存失败，直接访问目标服务器: {}", e.getMessage());
+            }
+        }
+        return new Lookup(null, null, null, resolve(httpRequest.getHost(), httpRequest.getPort()));
+    }
+
+    /**
+     * 缓存查找完成（事件循环线程）：新鲜的缓存直接返回，否则向目标服务器发起非阻塞连接，需要验证的缓存添加条件请求头部。
+     *
+     * @param lookup 查找结果
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void onLookupDone(Lookup lookup) throws IOException {
+        if (lookup.freshResponse() != null) {
+            sendResponse(lookup.freshResponse());
+            return;
+        }
+        if (lookup.address().isUnresolved()) {
+            log.warn("无法解析目标服务器地址，返回 502: {}", lookup.address().getHostString());
+            metrics.increment(Counter.UPSTREAM_ERRORS);
+            sendResponse(HttpUtils.createErrorResponse(HttpStatus.BAD_GATEWAY));
+            return;
+        }
+        cachedResponse = lookup.cachedResponse();
+        cachedHttpResponse = lookup.cachedHttpResponse();
+
+        // 如果缓存已过期但带有验证器，则添加条件请求头部向目标服务器验证
+        HttpRequest upstreamRequest = request;
+        if (cachedResponse != null) {
+            upstreamRequest = CachePolicy.addConditionalHeaders(request, cachedResponse.getHead());
+        }
+
+        pendingRequest = HttpUtils.encodeHttpRequest(upstreamRequest);
+
+        serverChannel = SocketChannel.open();
+        serverChannel.configureBlocking(false);
+        boolean connected;
+        try {
+            connected = serverChannel.connect(lookup.address());
+        } catch (IOException e) {
+            onUpstreamFailed(e);
+            return;
+        }
+        if (connected) {
+            serverKey = serverChannel.register(eventLoop.selector(), SelectionKey.OP_WRITE, this);
+            enterState(State.WRITING_REQUEST, READ_TIMEOUT_MILLIS);
+        } else {
+            serverKey = serverChannel.register(eventLoop.selector(), SelectionKey.OP_CONNECT, this);
+            enterState(State.CONNECTING, HttpConstant.DEFAULT_CONNECT_TIMEOUT);
+        }
+    }
+
+    /**
+     * 在阻塞任务线程池中执行可能阻塞的操作，完成后回到事件循环线程处理结果。操作完成前连接已关闭，
+     * 或已因超时进入其他状态时丢弃结果；线程池已满时向客户端返回 503 Service Unavailable。
+     *
+     * @param task 可能阻塞的操作
+     * @param handler 在事件循环线程中处理结果
+     * @param <T> 结果类型
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private <T> void offload(Supplier<T> task, ResultHandler<T> handler) throws IOException {
+        State waitingState = state;
+        int waitingRequest = requestCount;
+        try {
+            blockingExecutor.execute(() -> {
+                T result = task.get();
+                eventLoop.execute(() -> {
+                    if (closed || state != waitingState || requestCount != waitingRequest) {
+                        return;
+                    }
+                    try {
+                        handler.handle(result);
+                    } catch (Exception e) {
+                        log.error("处理连接时发生错误: {}", e.getMessage());
+                        close();
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("阻塞任务过多，返回 503");
+            keepAlive = false;
+            sendResponse(HttpUtils.createErrorResponse(HttpStatus.SERVICE_UNAVAILABLE));
+        }
+    }
+
+    /**
+     * 解析目标服务器地址，可能查询 DNS，只能在阻塞任务线程池中调用。无法解析时返回未解析的地址，连接时失败。
+     *
+     * @param host 主机名
+     * @param port 端口
+     * @return 目标服务器地址
+     */
+    private static InetSocketAddress resolve(String host, int port) {
+        return new InetSocketAddress(host, port);
+    }
+
+    /**
+     * 处理 CONNECT 请求：目标端口允许时发起到目标服务器的非阻塞连接，连接建立后进入隧道状态。
+     *
+     * @param httpRequest CONNECT 请求
+     */
+    private void connectTunnel(HttpRequest httpRequest) throws IOException {
+        String host = httpRequest.getUri().getHost();
+        int port = httpRequest.getUri().getPort();
+        keepAlive = false; // 隧道结束或出错后连接不再可用
+        if (host == null || !ProxyConfig.TUNNEL_PORTS.contains(port)) {
+            log.info("不允许建立隧道的目标: {}", httpRequest.getUri().getAuthority());
+            sendResponse(HttpUtils.createErrorResponse(HttpStatus.FORBIDDEN));
+            return;
+        }
+        clientKey.interestOps(0);
+        enterState(State.PREPARING, HttpConstant.DEFAULT_CONNECT_TIMEOUT);
+        offload(() -> resolve(host, port), this::openTunnel);
+    }
+
+    /**
+     * 目标服务器地址已解析（事件循环线程）：发起到隧道目标的非阻塞连接。
+     *
+     * @param address 目标服务器地址
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void openTunnel(InetSocketAddress address) throws IOException {
+        if (address.isUnresolved()) {
+            onTunnelConnectFailed(new UnknownHostException(address.getHostString()));
+            return;
+        }
+        serverChannel = SocketChannel.open();
+        serverChannel.configureBlocking(false);
+        try {
+            if (serverChannel.connect(address)) {
+                startTunnel();
+                return;
+            }
+        } catch (IOException e) {
+            onTunnelConnectFailed(e);
+            return;
+        }
+        serverKey = serverChannel.register(eventLoop.selector(), SelectionKey.OP_CONNECT, this);
+        enterState(State.CONNECTING_TUNNEL, HttpConstant.DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * 隧道的目标服务器连接已建立：已读取的客户端数据首先转发给目标服务器，200 响应首先写给客户端，之后双向转发字节。
+     */
+    private void startTunnel() throws IOException {
+        log.debug("已建立隧道: {}", serverChannel.getRemoteAddress());
+        metrics.increment(Counter.TUNNELS);
+        ByteBuffer buffered = clientData == null ? ByteBuffer.allocate(0)
+            : ByteBuffer.wrap(Arrays.copyOf(clientData.array(), clientDataLength));
+        consume(clientDataLength);
+        tunnel = new Tunnel(clientChannel, serverChannel, buffered, ByteBuffer.wrap(Tunnel.ESTABLISHED_RESPONSE));
+        if (serverKey == null) {
+            serverKey = serverChannel.register(eventLoop.selector(), 0, this);
+        }
+        enterState(State.TUNNELING, ProxyConfig.TUNNEL_IDLE_TIMEOUT_MILLIS);
+        onTunnelReady();
+    }
+
+    /**
+     * 无法连接隧道的目标服务器，返回 502 后关闭连接。
+     *
+     * @param cause 连接失败的原因
+     */
+    private void onTunnelConnectFailed(IOException cause) throws IOException {
+        log.warn("无法连接隧道目标，返回 502: {}", cause.getMessage());
+        closeServer();
+        sendResponse(HttpUtils.createErrorResponse(HttpStatus.BAD_GATEWAY));
+    }
+
+    /**
+     * 隧道的任一通道就绪：双向转发数据，并根据缓冲区状态更新两个通道关注的事件。空闲超时由截止时间控制。
+     */
+    private void onTunnelReady() throws IOException {
+        if (tunnel.pump()) {
+            deadline = tunnel.getLastActivity() + ProxyConfig.TUNNEL_IDLE_TIMEOUT_MILLIS;
+        }
+        if (tunnel.isFinished()) {
+            log.debug("隧道已关闭，上行 {} 字节，下行 {} 字节", tunnel.getBytesUp(), tunnel.getBytesDown());
+            metrics.add(Counter.TUNNEL_BYTES_UP, tunnel.getBytesUp());
+            metrics.add(Counter.TUNNEL_BYTES_DOWN, tunnel.getBytesDown());
+            close();
+            return;
+        }
+        clientKey.interestOps(tunnel.clientInterestOps());
+        serverKey.interestOps(tunnel.serverInterestOps());
+    }
+
+    /**
+     * 目标服务器连接建立完成。
+     */
+    private void onServerConnectable() throws IOException {
+        if (state == State.CONNECTING_TUNNEL) {
+            try {
+                serverChannel.finishConnect();
+            } catch (IOException e) {
+                onTunnelConnectFailed(e);
+                return;
+            }
+            startTunnel();
+            return;
+        }
+        try {
+            serverChannel.finishConnect();
+        } catch (IOException e) {
+            onUpstreamFailed(e);
+            return;
+        }
+        serverKey.interestOps(SelectionKey.OP_WRITE);
+        enterState(State.WRITING_REQUEST, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 目标服务器可写：写出请求，写完后开始读取响应。
+     */
+    private void onServerWritable() throws IOException {
+        try {
+            serverChannel.write(pendingRequest);
+        } catch (IOException e) {
+            onUpstreamFailed(e);
+            return;
+        }
+        if (!hasRemaining(pendingRequest)) {
+            pendingRequest = null;
+            serverKey.interestOps(SelectionKey.OP_READ);
+            enterState(State.READING_RESPONSE, READ_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * 目标服务器可读：读取响应头并尝试解析；响应头之后的响应体边读边转发给客户端。
+     */
+    private void onServerReadable() throws IOException {
+        if (state == State.RELAYING_RESPONSE) {
+            relayResponseBody();
+            return;
+        }
+        ByteBuffer buffer = eventLoop.readBuffer();
+        int bytesRead;
+        try {
+            bytesRead = serverChannel.read(buffer);
+        } catch (IOException e) {
+            onUpstreamFailed(e);
+            return;
+        }
+        if (bytesRead == -1) {
+            onUpstreamFailed(new IOException("目标服务器在响应头完成前关闭了连接"));
+            return;
+        }
+        buffer.flip();
+        serverData = append(serverData, serverDataLength, buffer);
+        serverDataLength += bytesRead;
+        deadline = System.currentTimeMillis() + READ_TIMEOUT_MILLIS;
+        tryParseResponse();
+    }
+
+    /**
+     * 尝试从已读取的目标服务器数据中解析出响应头。没有响应体的响应直接写回客户端，否则先写出响应头，再流式转发响应体。
+     */
+    private void tryParseResponse() throws IOException {
+        int headerEnd = indexOf(serverData.array(), 0, serverDataLength, HEADER_TERMINATOR);
+        if (headerEnd == -1) {
+            if (serverDataLength > MAX_HEADER_SIZE) {
+                log.warn("响应头过大，关闭连接");
+                close();
+            }
+            return;
+        }
+        int headerLength = headerEnd + HEADER_TERMINATOR.length;
+        HttpResponse httpResponse = parseHead(serverData.array(), headerLength);
+        log.debug("已接收到目标服务器响应，状态码: {}", httpResponse.getStatusCode());
+        if (CachePolicy.invalidatesCache(request, httpResponse)) {
+            cacheManager.invalidate(request.getUri().toString()); // 不安全的请求方法成功修改了资源，缓存不再可信
+        }
+
+        if (cachedHttpResponse != null && httpResponse.getStatusCode().equals(HttpStatus.NOT_MODIFIED)) {
+            // 如果缓存命中，且目标服务器返回 304 Not Modified，则更新缓存的新鲜期并返回缓存的响应
+            log.debug("目标服务器返回 304 Not Modified，直接使用缓存响应");
+            metrics.increment(Counter.CACHE_NOT_MODIFIED);
+            HttpResponse revalidatedHead = cacheManager.revalidated(cachedResponse, httpResponse).getHead();
+            httpResponse = new HttpResponse.Builder(revalidatedHead).body(cachedHttpResponse.getBody()).build();
+            cachedResponse = null;
+            cachedHttpResponse = null;
+            closeServer();
+            sendResponse(httpResponse);
+            return;
+        }
+        cachedResponse = null;
+        cachedHttpResponse = null;
+        if (!HttpUtils.hasBody(request.getMethod(), httpResponse)) {
+            // HEAD 请求的响应以及 1xx、204、304 响应没有响应体
+            if (CachePolicy.isCacheable(request, httpResponse)) {
+                cacheManager.put(request, httpResponse);
+            }
+            closeServer();
+            sendResponse(httpResponse);
+            return;
+        }
+        startRelay(httpResponse, headerLength);
+    }
+
+    /**
+     * 开始流式转发响应：先写出响应头，响应体在写完响应头之后由 {@link #relayResponseBody()} 转发。
+     * 可缓存的响应同时交给缓存写入器。
+     *
+     * @param head 响应头
+     * @param headerLength 目标服务器数据中响应头的长度，之后已读取的数据属于响应体
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void startRelay(HttpResponse head, int headerLength) throws IOException {
+        HttpHeaders headers = head.getHeaders();
+        bodyRemaining = -1;
+        chunkedDecoder = null;
+        if (headers.contains("Content-Length")) {
+            bodyRemaining = Long.parseLong(headers.get("Content-Length"));
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            chunkedDecoder = new ChunkedDecoder();
+        }
+        bodyComplete = bodyRemaining == 0;
+        serverDataOffset = headerLength;
+        cacheWriter = CachePolicy.isCacheable(request, head) ? cacheManager.openWriter(request, head) : null;
+
+        keepAlive = keepAlive && HttpUtils.hasFramedBody(request.getMethod(), head);
+        pendingResponse = HttpUtils.encodeHttpResponse(HttpUtils.setConnectionHeaders(head, keepAlive));
+        relayBuffer = HttpUtils.RELAY_BUFFERS.acquire().flip(); // 读模式下的空缓冲区
+        serverKey.interestOps(0);
+        clientKey.interestOps(SelectionKey.OP_WRITE);
+        enterState(State.RELAYING_RESPONSE, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 转发响应体：交替地从目标服务器读取一段数据到中转缓冲区，再写给客户端。客户端写不完时暂停读取目标服务器，直到客户端可写；
+     * 目标服务器暂时没有数据时暂停写客户端，直到目标服务器可读。因此每个连接只占用一个中转缓冲区，
+     * 较慢的客户端会通过 TCP 流量控制减慢目标服务器。
+     */
+    private void relayResponseBody() throws IOException {
+        for (int i = 0; i < MAX_TRANSFERS_PER_EVENT; i++) {
+            if (relayBuffer.hasRemaining()) {
+                clientChannel.write(relayBuffer);
+                if (relayBuffer.hasRemaining()) {
+                    serverKey.interestOps(0);
+                    clientKey.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if (bodyComplete) {
+                finishRelay();
+                return;
+            }
+            if (!fillRelayBuffer()) {
+                break; // 目标服务器暂时没有数据
+            }
+            deadline = System.currentTimeMillis() + READ_TIMEOUT_MILLIS;
+        }
+        // 目标服务器暂时没有数据，或已达到单次事件的转发轮数上限：等待下一次事件继续
+        boolean writePending = relayBuffer.hasRemaining() || bodyComplete;
+        clientKey.interestOps(writePending ? SelectionKey.OP_WRITE : 0);
+        serverKey.interestOps(writePending ? 0 : SelectionKey.OP_READ);
+    }
+
+    /**
+     * 向中转缓冲区读入下一段响应体：先取响应头之后已读取的数据，再从目标服务器通道读取。只保留属于响应体的部分，
+     * 并将其交给缓存写入器（分块传输的响应体交给解码后的数据）。
+     *
+     * @return 如果读入了数据或响应体已结束则返回 true，目标服务器暂时没有数据时返回 false
+     * @throws IOException 如果发生 I/O 错误，或目标服务器在响应体结束前关闭了连接
+     */
+    private boolean fillRelayBuffer() throws IOException {
+        relayBuffer.clear();
+        if (serverDataOffset < serverDataLength) {
+            int n = Math.min(relayBuffer.remaining(), serverDataLength - serverDataOffset);
+            relayBuffer.put(serverData.array(), serverDataOffset, n);
+            serverDataOffset += n;
+            if (serverDataOffset == serverDataLength) {
+                releaseServerData(); // 之后的响应体直接从通道读入中转缓冲区
+            }
+        } else if (serverChannel.read(relayBuffer) == -1) {
+            if (bodyRemaining != -1 || chunkedDecoder != null) {
+                throw new IOException("目标服务器在响应体结束前关闭了连接");
+            }
+            relayBuffer.flip();
+            bodyComplete = true; // 以关闭连接作为结束的响应体
+            return true;
+        }
+        relayBuffer.flip();
+        int length = relayBuffer.remaining();
+        if (length == 0) {
+            return false;
+        }
+        byte[] data = relayBuffer.array();
+        if (chunkedDecoder != null) {
+            length = chunkedDecoder.decode(data, 0, length, cacheWriter);
+            bodyComplete = chunkedDecoder.isDone();
+        } else {
+            if (bodyRemaining != -1) {
+                length = (int)Math.min(length, bodyRemaining);
+                bodyRemaining -= length;
+                bodyComplete = bodyRemaining == 0;
+            }
+            if (cacheWriter != null) {
+                cacheWriter.write(data, 0, length);
+            }
+        }
+        relayBuffer.limit(length); // 丢弃响应体之后的多余数据
+        return true;
+    }
+
+    /**
+     * 响应体转发完成：关闭目标服务器连接，归还中转缓冲区，可缓存时提交缓存，然后结束本次请求。
+     */
+    private void finishRelay() throws IOException {
+        closeServer();
+        releaseRelayBuffer();
+        releaseServerData();
+        chunkedDecoder = null;
+        if (cacheWriter != null && !cacheWriter.commit()) {
+            log.warn("响应体过大，不更新缓存");
+        }
+        cacheWriter = null;
+        finishResponse();
+    }
+
+    /**
+     * 将完整的响应放入写缓冲区，并开始向客户端写出。
+     *
+     * @param httpResponse 完整的响应
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void sendResponse(HttpResponse httpResponse) throws IOException {
+        keepAlive = keepAlive && HttpUtils.hasFramedBody(request.getMethod(), httpResponse);
+        releaseServerData();
+        pendingResponse = HttpUtils.encodeHttpResponse(HttpUtils.setConnectionHeaders(httpResponse, keepAlive));
+        clientKey.interestOps(SelectionKey.OP_WRITE);
+        enterState(State.WRITING_RESPONSE, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 客户端可写：写出响应（或流式转发时的响应头），写完后继续转发响应体，或结束本次请求。
+     */
+    private void onClientWritable() throws IOException {
+        if (pendingResponse != null) {
+            clientChannel.write(pendingResponse);
+            if (hasRemaining(pendingResponse)) {
+                return;
+            }
+            pendingResponse = null;
+        }
+        if (state == State.RELAYING_RESPONSE) {
+            relayResponseBody();
+        } else {
+            finishResponse();
+        }
+    }
+
+    /**
+     * 响应已全部写给客户端：继续处理同一连接上的下一个请求，或关闭连接。
+     */
+    private void finishResponse() throws IOException {
+        metrics.recordSince(Phase.TOTAL, requestStart);
+        if (!keepAlive) {
+            close();
+            return;
+        }
+        clientKey.interestOps(SelectionKey.OP_READ);
+        enterState(State.READING_REQUEST, HttpConstant.DEFAULT_KEEP_ALIVE_TIMEOUT);
+        tryParseRequest(); // 处理流水线中已经到达的请求
+    }
+
+    /**
+     * 切换状态并重置截止时间。
+     *
+     * @param newState 新状态
+     * @param timeoutMillis 新状态的超时时间
+     */
+    private void enterState(State newState, long timeoutMillis) {
+        state = newState;
+        deadline = System.currentTimeMillis() + timeoutMillis;
+    }
+
+    /**
+     * 关闭目标服务器连接。
+     */
+    private void closeServer() {
+        if (serverChannel == null) {
+            return;
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            log.error("关闭目标服务器连接失败: {}", e.getMessage());
+        }
+        serverChannel = null;
+        serverKey = null;
+    }
+
+    /**
+     * 丢弃已读取的目标服务器数据，并归还其缓冲区。
+     */
+    private void releaseServerData() {
+        DATA_BUFFERS.release(serverData);
+        serverData = null;
+        serverDataLength = 0;
+    }
+
+    /**
+     * 归还中转缓冲区。
+     */
+    private void releaseRelayBuffer() {
+        HttpUtils.RELAY_BUFFERS.release(relayBuffer);
+        relayBuffer = null;
+    }
+
+    /**
+     * 解析已完整到达的头部中的头部字段，用于确定消息体的边界。
+     *
+     * @param data 字节数组
+     * @param headerLength 头部长度（包含结束标志）
+     * @return 头部字段
+     * @throws IOException 如果头部格式错误
+     */
+    private static HttpHeaders parseHeaders(byte[] data, int headerLength) throws IOException {
+        return new HttpInputStream(new ByteArrayInputStream(data, 0, headerLength)).readHead().headers();
+    }
+
+    /**
+     * 解析已完整到达的响应头（状态行与头部字段），用于确定响应体的边界。
+     *
+     * @param data 字节数组
+     * @param headerLength 头部长度（包含结束标志）
+     * @return 响应头，响应体为空
+     * @throws IOException 如果头部格式错误
+     */
+    private static HttpResponse parseHead(byte[] data, int headerLength) throws IOException {
+        return HttpUtils.parseHttpResponseHead(new HttpInputStream(new ByteArrayInputStream(data, 0, headerLength)));
+    }
+
+    /**
+     * 丢弃客户端数据中已处理的前 n 个字节，保留之后的数据。全部处理完时归还缓冲区。
+     *
+     * @param n 已处理的字节数
+     */
+    private void consume(int n) {
+        clientDataLength -= n;
+        if (clientDataLength == 0) {
+            DATA_BUFFERS.release(clientData); // 没有未处理的数据时不占用缓冲区，空闲的持久连接不持有缓冲区
+            clientData = null;
+            return;
+        }
+        byte[] data = clientData.array();
+        System.arraycopy(data, n, data, 0, clientDataLength);
+    }
+
+    /**
+     * 将读缓冲区中的数据追加到已读取的数据末尾。还没有数据时从缓冲区池租用缓冲区，超出容量时换用更大的数组
+     * （容量与池中的缓冲区不同，归还时被缓冲区池忽略），并归还原来的缓冲区。
+     *
+     * @param data 已读取的数据，可以为 null
+     * @param length 已读取的数据长度
+     * @param buffer 待追加的数据
+     * @return 追加后的数据
+     */
+    private static ByteBuffer append(ByteBuffer data, int length, ByteBuffer buffer) {
+        if (data == null) {
+            data = DATA_BUFFERS.acquire();
+        }
+        int required = length + buffer.remaining();
+        if (required > data.capacity()) {
+            ByteBuffer larger = ByteBuffer.wrap(Arrays.copyOf(data.array(), Math.max(required, data.capacity() * 2)));
+            DATA_BUFFERS.release(data);
+            data = larger;
+        }
+        buffer.get(data.array(), length, buffer.remaining());
+        return data;
+    }
+
+    /**
+     * 判断一组待写出的缓冲区中是否还有数据。
+     *
+     * @param buffers 按顺序写出的缓冲区
+     * @return 如果还有数据未写出则返回 true
+     */
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        return buffers[buffers.length - 1].hasRemaining();
+    }
+
+    /**
+     * 在字节数组的指定范围内查找目标字节序列。
+     *
+     * @param data 字节数组
+     * @param from 起始位置（包含）
+     * @param to 结束位置（不包含）
+     * @param target 目标字节序列
+     * @return 目标序列的起始位置，未找到则返回 -1
+     */
+    private static int indexOf(byte[] data, int from, int to, byte[] target) {
+        outer:
+        for (int i = from; i <= to - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 在阻塞任务线程池中查找缓存的结果。
+     *
+     * @param freshResponse 新鲜的缓存响应（已带有 Age 头部），可以直接返回给客户端，否则为 null
+     * @param cachedResponse 已过期但带有验证器、需要向目标服务器验证的缓存，否则为 null
+     * @param cachedHttpResponse 需要验证的缓存对应的完整响应
+     * @param address 已解析的目标服务器地址，直接返回缓存时为 null
+     */
+    private record Lookup(HttpResponse freshResponse, CachedResponse cachedResponse, HttpResponse cachedHttpResponse,
+        InetSocketAddress address) {
+    }
+
+    /**
+     * 在事件循环线程中处理阻塞操作结果的回调。
+     *
+     * @param <T> 结果类型
+     */
+    @FunctionalInterface
+    private interface ResultHandler<T> {
+
+        /**
+         * 处理结果。
+         *
+         * @param result 阻塞操作的结果
+         * @throws IOException 如果发生 I/O 错误
+         */
+        void handle(T result) throws IOException;
+    }
+
+    /**
+     * 连接状态。
+     */
+    private enum State {
+        READING_REQUEST, // 读取客户端请求
+        PREPARING, // 在阻塞任务线程池中查找缓存或解析目标服务器地址
+        CONNECTING, // 连接目标服务器
+        WRITING_REQUEST, // 向目标服务器写出请求
+        READING_RESPONSE, // 读取目标服务器响应
+        RELAYING_RESPONSE, // 向客户端写出响应头并流式转发响应体
+        WRITING_RESPONSE, // 向客户端写出完整的响应
+        CONNECTING_TUNNEL, // 连接隧道的目标服务器
+        TUNNELING // 在客户端与目标服务器之间双向转发字节
+    }
+}
@@ -0,0 +1,129 @@
+package cn.edu.hit.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Set;
+
+import cn.edu.hit.cache.CacheManager;
+import cn.edu.hit.config.ProxyConfig;
+import cn.edu.hit.filter.FilterManager;
+import cn.edu.hit.metrics.MetricsServer;
+import cn.edu.hit.metrics.ProxyMetrics;
+import cn.edu.hit.metrics.ProxyMetrics.Counter;
+import cn.edu.hit.utils.HttpUtils;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于 NIO Selector 的 HTTP 代理服务器，使用少量事件循环线程多路复用全部客户端与目标服务器连接。
+ */
+@Slf4j
+public class NioProxyServer {
+
+    private static final int DEFAULT_EVENT_LOOP_COUNT = Runtime.getRuntime().availableProcessors(); // 默认事件循环数量
+    private static final int DEFAULT_PROXY_PORT = 20000; // 默认代理服务器端口
+    private final NioEventLoop[] eventLoops; // 事件循环
+    private final int proxyPort; // 代理服务器端口
+    private int nextEventLoop; // 下一个分配连接的事件循环下标
+
+    /**
+     * 构造函数，初始化代理服务器。
+     *
+     * @param eventLoopCount 事件循环数量
+     * @param proxyPort 代理服务器端口
+     * @throws IOException 如果无法创建事件循环
+     */
+    public NioProxyServer(int eventLoopCount, int proxyPort) throws IOException {
+        this.proxyPort = proxyPort;
+        this.eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new NioEventLoop("nio-event-loop-" + i);
+        }
+        log.info("初始化事件循环，数量: {}, 监听端口: {}", eventLoopCount, proxyPort);
+    }
+
+    /**
+     * 默认构造函数，使用默认事件循环数量和端口。
+     *
+     * @throws IOException 如果无法创建事件循环
+     */
+    public NioProxyServer() throws IOException {
+        this(DEFAULT_EVENT_LOOP_COUNT, DEFAULT_PROXY_PORT);
+    }
+
+    /**
+     * 启动代理服务器，使用指定的过滤规则。
+     *
+     * @param blockedSites 被禁止访问的网站集合
+     * @param blockedUsers 被禁止访问的用户集合
+     * @param redirectSites 网站重定向映射
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public void start(Set<String> blockedSites, Set<String> blockedUsers, Map<String, String> redirectSites)
+        throws IOException {
+        start(new FilterManager(blockedSites, blockedUsers, redirectSites));
+    }
+
+    /**
+     * 启动代理服务器，使用默认的过滤规则。
+     *
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public void start() throws IOException {
+        start(new FilterManager());
+    }
+
+    /**
+     * 启动事件循环，并在当前线程中接收客户端连接，轮流分配给各事件循环。
+     *
+     * @param filterManager 所有连接共享的过滤器管理器
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void start(FilterManager filterManager) throws IOException {
+        CacheManager cacheManager = new CacheManager();
+        cacheManager.registerMetrics(ProxyMetrics.getInstance());
+        Tunnel.BUFFERS.registerMetrics(ProxyMetrics.getInstance(), "tunnel");
+        NioProxyConnection.DATA_BUFFERS.registerMetrics(ProxyMetrics.getInstance(), "nio_data");
+        HttpUtils.RELAY_BUFFERS.registerMetrics(ProxyMetrics.getInstance(), "relay");
+        MetricsServer.startIfEnabled(ProxyConfig.METRICS_PORT);
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(proxyPort));
+            log.info("代理服务器正在运行，监听端口: {}", proxyPort);
+            while (true) {
+                // 接收客户端连接
+                SocketChannel clientChannel = serverChannel.accept();
+                InetAddress user = ((InetSocketAddress)clientChannel.getRemoteAddress()).getAddress();
+                if (filterManager.isUserBlocked(user)) {
+                    log.info("该用户已被禁止访问: {}", user.getHostAddress());
+                    ProxyMetrics.getInstance().increment(Counter.BLOCKED_USERS);
+                    clientChannel.close();
+                    continue;
+                }
+                clientChannel.configureBlocking(false);
+
+                // 轮流分配给事件循环
+                NioEventLoop eventLoop = eventLoops[nextEventLoop];
+                nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+                NioProxyConnection connection =
+                    new NioProxyConnection(eventLoop, clientChannel, filterManager, cacheManager);
+                eventLoop.execute(() -> {
+                    try {
+                        connection.register();
+                    } catch (IOException e) {
+                        log.error("注册客户端连接失败: {}", e.getMessage());
+                        connection.close();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.error("服务器异常: {}", e.getMessage());
+            throw e;
+        }
+    }
+}
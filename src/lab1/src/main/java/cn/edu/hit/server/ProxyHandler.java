@@ -1,53 +1,88 @@
 package cn.edu.hit.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
-import java.util.Map;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import cn.edu.hit.cache.CacheManager;
+import cn.edu.hit.cache.CachePolicy;
+import cn.edu.hit.cache.CachedResponse;
+import cn.edu.hit.cache.SingleFlight;
+import cn.edu.hit.cache.CacheWriter;
+import cn.edu.hit.config.ProxyConfig;
 import cn.edu.hit.core.HttpConstant;
+import cn.edu.hit.core.HttpHeaders;
 import cn.edu.hit.core.HttpRequest;
 import cn.edu.hit.core.HttpResponse;
 import cn.edu.hit.core.HttpStatus;
 import cn.edu.hit.filter.FilterManager;
+import cn.edu.hit.filter.FilterRules;
+import cn.edu.hit.metrics.ProxyMetrics;
+import cn.edu.hit.metrics.ProxyMetrics.Counter;
+import cn.edu.hit.metrics.ProxyMetrics.Phase;
+import cn.edu.hit.pool.BufferPool;
+import cn.edu.hit.pool.UpstreamConnection;
+import cn.edu.hit.pool.UpstreamConnectionPool;
+import cn.edu.hit.utils.HttpInputStream;
 import cn.edu.hit.utils.HttpUtils;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * 代理处理器类，用于处理客户端请求并转发到目标服务器。
  */
+@Slf4j
 public class ProxyHandler implements Runnable {
 
     private static final CacheManager cacheManager = new CacheManager(); // 全局缓存管理器
+    private static final UpstreamConnectionPool connectionPool = new UpstreamConnectionPool(); // 全局目标服务器连接池
+    private static final SingleFlight<String, Boolean> inFlightRequests = new SingleFlight<>(); // 进行中的可合并请求，结果为缓存是否已更新
+    private static final ExecutorService refreshExecutor = new ThreadPoolExecutor(ProxyConfig.REFRESH_THREADS,
+        ProxyConfig.REFRESH_THREADS, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(ProxyConfig.REFRESH_QUEUE_SIZE),
+        Thread.ofPlatform().name("cache-refresh-", 0).daemon().factory()); // 后台重新验证缓存的线程池
+    private static final Set<HttpStatus> STALE_IF_ERROR_STATUSES = EnumSet.of(HttpStatus.INTERNAL_SERVER_ERROR,
+        HttpStatus.BAD_GATEWAY, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT); // 可以改用过期缓存的错误状态码
+    private static final ProxyMetrics metrics = ProxyMetrics.getInstance(); // 全局运行指标
     private final FilterManager filterManager; // 全局过滤器管理器
     private final Socket clientSocket; // 客户端套接字
+    // 通道间直接传输使用的直接缓冲区池
+    private static final BufferPool spliceBuffers =
+        new BufferPool(ProxyConfig.SPLICE_BUFFER_SIZE, true, ProxyConfig.BUFFER_POOL_MAX_IDLE);
+    private ByteBuffer spliceBuffer; // 通道间直接传输使用的直接缓冲区，首次使用时租用，连接结束时归还
 
     /**
-     * 构造函数，初始化代理处理器。
+     * 构造函数，初始化代理处理器。过滤器管理器由所有连接共享，用户过滤已在接收连接时完成。
      *
      * @param clientSocket 客户端套接字
+     * @param filterManager 过滤器管理器
      */
-    public ProxyHandler(Socket clientSocket) {
+    public ProxyHandler(Socket clientSocket, FilterManager filterManager) {
         this.clientSocket = clientSocket;
-        this.filterManager = new FilterManager();
-        System.out.println("[ProxyHandler] 创建新的代理处理器，客户端地址: " + clientSocket.getRemoteSocketAddress());
+        this.filterManager = filterManager;
+        log.debug("创建新的代理处理器，客户端地址: {}", clientSocket.getRemoteSocketAddress());
     }
 
     /**
-     * 构造函数，初始化代理处理器。
-     *
-     * @param clientSocket 客户端套接字
-     * @param blockedSites 被禁止访问的网站集合
-     * @param blockedUsers 被禁止访问的用户集合
-     * @param redirectSites 网站重定向映射
+     * 将全局缓存、连接池、缓冲区池与请求合并的统计信息注册为运行指标，由服务器启动时调用一次。
      */
-    public ProxyHandler(Socket clientSocket, Set<String> blockedSites, Set<String> blockedUsers,
-        Map<String, String> redirectSites) {
-        this.clientSocket = clientSocket;
-        this.filterManager = new FilterManager(blockedSites, blockedUsers, redirectSites);
-        System.out.println("[ProxyHandler] 创建新的代理处理器，客户端地址: " + clientSocket.getRemoteSocketAddress());
+    static void registerMetrics() {
+        cacheManager.registerMetrics(metrics);
+        connectionPool.registerMetrics(metrics);
+        spliceBuffers.registerMetrics(metrics, "splice");
+        HttpUtils.RELAY_BUFFERS.registerMetrics(metrics, "relay");
+        Tunnel.BUFFERS.registerMetrics(metrics, "tunnel");
+        metrics.registerCounter("proxy_coalesced_requests_total", "被合并、未单独访问目标服务器的请求数",
+            inFlightRequests::getFollowers);
     }
 
     /**
@@ -57,109 +92,587 @@ public class ProxyHandler implements Runnable {
     public void run() {
         try {
             handleProxy(clientSocket); // 调用代理处理逻辑
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("[ProxyHandler] 处理请求时发生错误: " + e.getMessage());
+        } catch (IOException e) {
+            log.error("处理请求时发生错误: {}", e.getMessage());
         }
     }
 
     /**
-     * 处理代理逻辑。
+     * 处理代理逻辑。在同一个客户端连接上依次处理多个请求（HTTP/1.1 持久连接），流水线发送的请求按到达顺序逐个处理并按序返回响应。
      *
      * @param clientSocket 客户端套接字
      * @throws IOException 如果发生 I/O 错误
-     * @throws ClassNotFoundException 如果类未找到
      */
-    private void handleProxy(Socket clientSocket) throws IOException, ClassNotFoundException {
+    private void handleProxy(Socket clientSocket) throws IOException {
         String user = clientSocket.getInetAddress().getHostAddress();
-        System.out.printf("[ProxyHandler] 正在处理用户 [%s] 的请求\n", user);
-        if (filterManager.isUserBlocked(user)) {
-            System.out.println("[ProxyHandler] 该用户已被禁止访问: " + user);
-            return;
+        log.debug("正在处理用户 [{}] 的请求", user);
+        log.debug("开始处理客户端请求: {}", clientSocket.getRemoteSocketAddress());
+        clientSocket.setSoTimeout(HttpConstant.DEFAULT_KEEP_ALIVE_TIMEOUT); // 持久连接的空闲超时
+        try (HttpInputStream clientIn = new HttpInputStream(clientSocket.getInputStream());
+            OutputStream clientOut = clientSocket.getOutputStream()) {
+            boolean keepAlive = true;
+            int requestCount = 0;
+            while (keepAlive) {
+                // 读取客户端请求，解析HTTP请求头
+                HttpRequest httpRequest = null;
+                long start = 0;
+                try {
+                    // 先等待请求的第一个字节，使解析阶段的耗时不包含持久连接的空闲时间
+                    if (clientIn.awaitData()) {
+                        start = System.nanoTime();
+                        httpRequest = HttpUtils.parseHttpRequest(clientIn);
+                    }
+                } catch (SocketTimeoutException e) {
+                    log.debug("持久连接空闲超时，关闭连接: {}", clientSocket.getRemoteSocketAddress());
+                    break;
+                }
+                if (httpRequest == null) {
+                    log.debug("客户端已关闭连接: {}", clientSocket.getRemoteSocketAddress());
+                    break;
+                }
+                metrics.recordSince(Phase.PARSE, start);
+                metrics.increment(Counter.REQUESTS);
+                requestCount++;
+                boolean allowKeepAlive = requestCount < HttpConstant.DEFAULT_KEEP_ALIVE_MAX_REQUESTS;
+                keepAlive = handleRequest(httpRequest, clientIn, clientOut, allowKeepAlive);
+                if (!"CONNECT".equalsIgnoreCase(httpRequest.getMethod())) {
+                    metrics.recordSince(Phase.TOTAL, start);
+                }
+            }
+        } finally {
+            spliceBuffers.release(spliceBuffer);
+            spliceBuffer = null;
         }
+    }
 
-        System.out.println("[ProxyHandler] 开始处理客户端请求: " + clientSocket.getRemoteSocketAddress());
-        try (InputStream clientIn = clientSocket.getInputStream();
-            OutputStream clientOut = clientSocket.getOutputStream()) {
-            // 读取客户端请求，解析HTTP请求头
-            HttpRequest httpRequest = HttpUtils.parseHttpRequest(clientIn);
-            System.out.println("[ProxyHandler] 已解析客户端请求，请求体如下: ");
-            System.out.println("========================================");
-            System.out.print(httpRequest);
-            System.out.println("========================================");
+    /**
+     * 处理单个客户端请求。
+     *
+     * @param httpRequest 客户端请求
+     * @param clientIn 客户端输入流，建立 CONNECT 隧道时其中已缓冲的数据转发给目标服务器
+     * @param clientOut 客户端输出流
+     * @param allowKeepAlive 本次响应后是否还允许保持连接
+     * @return 如果处理完成后可以继续在该连接上读取下一个请求则返回 true
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private boolean handleRequest(HttpRequest httpRequest, HttpInputStream clientIn, OutputStream clientOut,
+        boolean allowKeepAlive) throws IOException {
+        log.debug("已解析客户端请求:\n{}", httpRequest); // 只有启用 debug 级别时才格式化请求
+
+        String host = httpRequest.getHost();
 
-            String host = httpRequest.getHost();
+        // 过滤逻辑，同一请求使用同一个规则快照
+        long filterStart = System.nanoTime();
+        FilterRules rules = filterManager.getRules();
+        boolean blocked = rules.isSiteBlocked(host);
+        String redirectSite = blocked ? null : rules.getRedirect(host);
+        metrics.recordSince(Phase.FILTER, filterStart);
+        if (blocked) {
+            log.info("该网站已被禁止访问: {}", host);
+            metrics.increment(Counter.BLOCKED_SITES);
+            return false;
+        }
 
-            // 过滤逻辑
-            if (filterManager.isSiteBlocked(host)) {
-                System.out.println("[ProxyHandler] 该网站已被禁止访问: " + host);
-                return;
+        if ("CONNECT".equalsIgnoreCase(httpRequest.getMethod())) {
+            tunnel(httpRequest, clientIn, clientOut);
+            return false; // 隧道结束后连接不再可用
+        }
+
+        if (httpRequest.getPort() != HttpConstant.HTTP_DEFAULT_PORT) {
+            log.warn("仅支持 http 形式的请求目标与 CONNECT 隧道，端口: {}", httpRequest.getPort());
+            return false;
+        }
+
+        boolean keepAlive = allowKeepAlive && HttpUtils.isKeepAlive(httpRequest);
+
+        // 检查是否有网站重定向规则
+        if (redirectSite != null) {
+            log.debug("该网站 [{}] 已被重定向至: [{}]", host, redirectSite);
+            metrics.increment(Counter.REDIRECTS);
+            // 重定向目标网站
+            httpRequest = httpRequest.updateHeader("Host", redirectSite);
+        }
+
+        // 获取请求的 URI，用于缓存
+        String uri = httpRequest.getUri().toString();
+        if (!CachePolicy.canUseCache(httpRequest)) {
+            return forwardRequest(httpRequest, uri, null, clientOut, keepAlive, null);
+        }
+
+        long lookupStart = System.nanoTime();
+        try (CachedResponse cachedResponse = cacheManager.get(httpRequest)) {
+            metrics.recordSince(Phase.CACHE_LOOKUP, lookupStart);
+            if (cachedResponse == null) {
+                metrics.increment(Counter.CACHE_MISSES);
+            }
+            long now = System.currentTimeMillis();
+            if (cachedResponse != null && CachePolicy.isFresh(httpRequest, cachedResponse, now)) {
+                // 缓存仍然新鲜，直接返回给客户端，不访问目标服务器
+                log.debug("缓存命中且仍然新鲜，直接返回缓存响应: {}", uri);
+                metrics.increment(Counter.CACHE_HITS);
+                return serveCached(cachedResponse, clientOut, keepAlive);
+            }
+            if (cachedResponse != null && CachePolicy.canServeStaleWhileRevalidate(httpRequest, cachedResponse, now)) {
+                // 缓存刚过期不久，先返回过期的缓存，再在后台向目标服务器验证，客户端无需等待
+                log.debug("缓存已过期，先返回过期缓存并在后台重新验证: {}", uri);
+                metrics.increment(Counter.CACHE_HITS);
+                refreshInBackground(httpRequest, uri, cachedResponse);
+                return serveCached(cachedResponse, clientOut, keepAlive);
+            }
+            if (!ProxyConfig.REQUEST_COALESCING || !isCoalescable(httpRequest)) {
+                return forwardRequest(httpRequest, uri, cachedResponse, clientOut, keepAlive, null);
             }
 
-            if (httpRequest.getPort() != HttpConstant.HTTP_DEFAULT_PORT) {
-                System.err.println("[ProxyHandler] 仅支持HTTP协议，不支持HTTPS");
-                return;
+            // 同一 URI 同时只有一个请求访问目标服务器，其余请求等待其结果后直接使用缓存
+            try (SingleFlight<String, Boolean>.Call call = inFlightRequests.begin(uri)) {
+                if (call.isLeader()) {
+                    return forwardRequest(httpRequest, uri, cachedResponse, clientOut, keepAlive, call);
+                }
+                log.debug("同一 URI 的请求正在进行，等待其结果: {}", uri);
+                if (Boolean.TRUE.equals(call.await(ProxyConfig.COALESCING_TIMEOUT_MILLIS))) {
+                    try (CachedResponse sharedResponse = cacheManager.get(httpRequest)) {
+                        if (sharedResponse != null) {
+                            log.debug("已合并请求，直接使用刚更新的缓存响应，{}", inFlightRequests);
+                            metrics.increment(Counter.CACHE_HITS);
+                            return serveCached(sharedResponse, clientOut, keepAlive);
+                        }
+                    }
+                }
+                // 结果不可缓存、领导者失败或等待超时，自行访问目标服务器
+                log.debug("无法使用合并请求的结果，直接转发请求: {}", uri);
+                return forwardRequest(httpRequest, uri, cachedResponse, clientOut, keepAlive, null);
             }
+        }
+    }
 
-            // 检查是否有网站重定向规则
-            String redirectSite = filterManager.getRedirect(host);
-            if (redirectSite != null) {
-                System.out.printf("[ProxyHandler] 该网站 [%s] 已被重定向至: [%s]\n", host, redirectSite);
-                // 重定向目标网站
-                httpRequest = httpRequest.updateHeader("Host", redirectSite);
+    /**
+     * 处理 CONNECT 请求：连接目标服务器，返回 200 后在客户端与目标服务器之间建立隧道，原样转发双向的字节，直到隧道结束。
+     * 目标端口不在允许范围内时返回 403，无法连接目标服务器时返回 502（连接超时为 504）。
+     *
+     * @param httpRequest CONNECT 请求
+     * @param clientIn 客户端输入流，其中已缓冲的数据在隧道建立后首先转发给目标服务器
+     * @param clientOut 客户端输出流
+     * @throws IOException 如果向客户端写出错误响应时发生 I/O 错误
+     */
+    private void tunnel(HttpRequest httpRequest, HttpInputStream clientIn, OutputStream clientOut)
+        throws IOException {
+        String host = httpRequest.getUri().getHost();
+        int port = httpRequest.getUri().getPort();
+        if (host == null || !ProxyConfig.TUNNEL_PORTS.contains(port)) {
+            log.info("不允许建立隧道的目标: {}", httpRequest.getUri().getAuthority());
+            HttpUtils.forwardHttpResponse(
+                HttpUtils.setConnectionHeaders(HttpUtils.createErrorResponse(HttpStatus.FORBIDDEN), false), clientOut);
+            return;
+        }
+        SocketChannel serverChannel;
+        try {
+            serverChannel = HttpUtils.connectToServer(host, port).getChannel();
+        } catch (IOException e) {
+            HttpStatus status = e instanceof SocketTimeoutException
+                ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.BAD_GATEWAY;
+            log.warn("无法连接隧道目标 {}:{}，返回 {}: {}", host, port, status.getCode(), e.getMessage());
+            HttpUtils.forwardHttpResponse(HttpUtils.setConnectionHeaders(HttpUtils.createErrorResponse(status), false),
+                clientOut);
+            return;
+        }
+        log.debug("已建立隧道: {}:{}", host, port);
+        metrics.increment(Counter.TUNNELS);
+        try (serverChannel) {
+            ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+            clientIn.drainBuffered(buffered, Long.MAX_VALUE); // 客户端可能未等待 200 就发送了数据
+            SocketChannel clientChannel = clientSocket.getChannel();
+            clientChannel.configureBlocking(false);
+            serverChannel.configureBlocking(false);
+            Tunnel tunnel = new Tunnel(clientChannel, serverChannel, ByteBuffer.wrap(buffered.toByteArray()),
+                ByteBuffer.wrap(Tunnel.ESTABLISHED_RESPONSE));
+            try {
+                tunnel.run(ProxyConfig.TUNNEL_IDLE_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                log.debug("隧道连接中断: {}", e.getMessage());
             }
+            log.debug("隧道已关闭: {}:{}，上行 {} 字节，下行 {} 字节", host, port, tunnel.getBytesUp(),
+                tunnel.getBytesDown());
+            metrics.add(Counter.TUNNEL_BYTES_UP, tunnel.getBytesUp());
+            metrics.add(Counter.TUNNEL_BYTES_DOWN, tunnel.getBytesDown());
+            tunnel.release();
+        }
+    }
+
+    /**
+     * 判断请求能否与其他请求合并：只有不带请求体、与用户身份无关的完整 GET 请求的结果才能共享。
+     *
+     * @param httpRequest 客户端请求
+     * @return 如果可以合并则返回 true
+     */
+    private static boolean isCoalescable(HttpRequest httpRequest) {
+        HttpHeaders headers = httpRequest.getHeaders();
+        return HttpConstant.GET.equals(httpRequest.getMethod()) && !headers.contains("Content-Length")
+            && !headers.contains("Authorization") && !headers.contains("Range");
+    }
+
+    /**
+     * 将请求转发给目标服务器，并将目标服务器的响应或缓存的响应返回给客户端。
+     *
+     * @param httpRequest 客户端请求
+     * @param uri 请求的 URI
+     * @param cachedResponse 需要验证的缓存响应，未命中时为 null
+     * @param clientOut 客户端输出流
+     * @param keepAlive 客户端是否希望保持连接
+     * @param call 合并请求中领导者的调用，缓存更新后通过它通知等待的请求；不参与合并时为 null
+     * @return 如果处理完成后可以继续在该连接上读取下一个请求则返回 true
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private boolean forwardRequest(HttpRequest httpRequest, String uri, CachedResponse cachedResponse,
+        OutputStream clientOut, boolean keepAlive, SingleFlight<String, Boolean>.Call call) throws IOException {
+        log.info("正在处理请求: {}", uri);
+
+        // 如果缓存已过期但带有验证器，则添加 If-None-Match 与 If-Modified-Since 头部向目标服务器验证
+        HttpRequest upstreamRequest = httpRequest;
+        boolean revalidating = cachedResponse != null && CachePolicy.hasValidator(cachedResponse.getHead());
+        if (revalidating) {
+            log.debug("缓存命中但已过期，添加条件请求头部进行验证");
+            upstreamRequest = CachePolicy.addConditionalHeaders(httpRequest, cachedResponse.getHead());
+        } else {
+            log.debug("缓存未命中，直接转发请求");
+        }
 
-            // 获取请求的 URI，用于缓存
-            String uri = httpRequest.getUri().toString();
-            HttpResponse cachedHttpResponse = cacheManager.get(uri);
-            System.out.println("[ProxyHandler] 正在处理请求: " + uri);
+        // 将客户端的请求转发给目标服务器，并读取目标服务器响应头
+        UpstreamResponse upstreamResponse;
+        try {
+            upstreamResponse = exchange(HttpUtils.setUpstreamConnectionHeaders(upstreamRequest));
+        } catch (IOException e) {
+            return serveStaleOrError(httpRequest, cachedResponse, clientOut, keepAlive, e);
+        }
+        HttpResponse httpResponse = upstreamResponse.head();
+        log.debug("已接收到目标服务器响应，状态码: {}", httpResponse.getStatusCode());
+        if (CachePolicy.invalidatesCache(httpRequest, httpResponse)) {
+            cacheManager.invalidate(uri); // 不安全的请求方法成功修改了资源，缓存不再可信
+        }
+
+        if (cachedResponse != null && STALE_IF_ERROR_STATUSES.contains(httpResponse.getStatusCode())
+            && CachePolicy.canServeStaleIfError(httpRequest, cachedResponse, System.currentTimeMillis())) {
+            // 目标服务器出错时返回过期的缓存
+            log.debug("目标服务器返回错误状态码，返回过期的缓存响应");
+            try {
+                readBody(upstreamResponse);
+            } catch (IOException e) {
+                log.debug("读取目标服务器的错误响应体失败: {}", e.getMessage()); // 连接已关闭，不影响返回缓存
+            }
+            return serveCached(cachedResponse, clientOut, keepAlive);
+        }
 
-            // 如果缓存命中，则添加 If-Modified-Since 头部
-            if (cachedHttpResponse != null) {
-                System.out.println("[ProxyHandler] 缓存命中，添加 If-Modified-Since 头部");
-                httpRequest = HttpUtils.addIfModifiedSinceHeader(httpRequest, cachedHttpResponse.getLastModified());
+        if (revalidating && httpResponse.getStatusCode().equals(HttpStatus.NOT_MODIFIED)) {
+            // 如果缓存命中，且目标服务器返回 304 Not Modified，则更新缓存的新鲜期并返回缓存的响应
+            log.debug("目标服务器返回 304 Not Modified，直接使用缓存响应");
+            metrics.increment(Counter.CACHE_NOT_MODIFIED);
+            readBody(upstreamResponse);
+            CachedResponse revalidated = cacheManager.revalidated(cachedResponse, httpResponse);
+            log.debug("更新后的缓存响应头部:\n{}", revalidated.getHead());
+            if (call != null) {
+                call.complete(true); // 缓存仍然有效，等待的请求可以直接使用
+            }
+            return serveCached(revalidated, clientOut, keepAlive);
+        } else if (ProxyConfig.STREAMING_RELAY) {
+            // 流式转发：先转发响应头，再边读边写响应体，可缓存时同时写入缓存
+            CacheWriter cacheWriter = null;
+            if (CachePolicy.isCacheable(httpRequest, httpResponse)) {
+                log.debug("目标服务器返回的新响应可以缓存，更新缓存");
+                cacheWriter = cacheManager.openWriter(httpRequest, httpResponse);
             } else {
-                System.out.println("[ProxyHandler] 缓存未命中，直接转发请求");
-            }
-
-            try (
-                // 连接目标服务器
-                Socket serverSocket = HttpUtils.connectToServer(httpRequest.getHost(), httpRequest.getPort());
-                InputStream serverIn = serverSocket.getInputStream();
-                OutputStream serverOut = serverSocket.getOutputStream()) {
-                System.out.println("[ProxyHandler] 成功连接目标服务器: " + httpRequest.getHost() + ":" + httpRequest.getPort());
-
-                // 将客户端的请求转发给目标服务器
-                HttpUtils.forwardHttpRequest(httpRequest, serverOut);
-                System.out.println("[ProxyHandler] 已将请求转发至目标服务器");
-
-                // 读取目标服务器响应，解析HTTP响应头
-                HttpResponse httpResponse = HttpUtils.parseHttpResponse(serverIn);
-                System.out.println("[ProxyHandler] 已接收到目标服务器响应，状态码: " + httpResponse.getStatusCode());
-
-                if (cachedHttpResponse != null && httpResponse.getStatusCode().equals(HttpStatus.NOT_MODIFIED)) {
-                    // 如果缓存命中，且目标服务器返回 304 Not Modified，则直接返回缓存的响应
-                    System.out.println("[ProxyHandler] 目标服务器返回 304 Not Modified，直接使用缓存响应");
-                    System.out.println("========================================");
-                    System.out.print(cachedHttpResponse);
-                    System.out.println("========================================");
-                    HttpUtils.forwardHttpResponse(cachedHttpResponse, clientOut);
-                } else {
-                    // 如果目标服务器返回新的响应或缓存不存在，则将响应转发给客户端
-                    if (httpResponse.getLastModified() != null) {
-                        System.out.println("[ProxyHandler] 目标服务器返回新响应中存在 Last-Modified，更新缓存");
-                        cacheManager.put(uri, httpResponse);
-                    } else {
-                        System.out.println("[ProxyHandler] 目标服务器返回新响应中不存在 Last-Modified，不更新缓存");
-                    }
-                    HttpUtils.forwardHttpResponse(httpResponse, clientOut);
+                log.debug("目标服务器返回的新响应不可缓存，不更新缓存");
+                if (call != null) {
+                    call.complete(false); // 等待的请求不必等到响应体转发完毕，立即自行请求
+                }
+            }
+            keepAlive = keepAlive && HttpUtils.hasFramedBody(httpRequest.getMethod(), httpResponse);
+            long writeStart = System.nanoTime();
+            HttpUtils.forwardHttpResponse(HttpUtils.setConnectionHeaders(httpResponse, keepAlive), clientOut);
+            metrics.recordSince(Phase.CLIENT_WRITE, writeStart);
+            long transferStart = System.nanoTime();
+            relayBody(upstreamResponse, clientOut, cacheWriter);
+            metrics.recordSince(Phase.BODY_TRANSFER, transferStart);
+            boolean committed = cacheWriter != null && cacheWriter.commit();
+            if (cacheWriter != null && !committed) {
+                log.warn("响应体过大，不更新缓存");
+            }
+            if (call != null && cacheWriter != null) {
+                call.complete(committed);
+            }
+            log.debug("已将响应流式转发至客户端{}", keepAlive ? "，保持连接" : "");
+            return keepAlive;
+        } else {
+            // 如果目标服务器返回新的响应或缓存不存在，则将响应转发给客户端
+            boolean cacheable = CachePolicy.isCacheable(httpRequest, httpResponse); // 只取决于响应头
+            if (!cacheable && call != null) {
+                call.complete(false); // 等待的请求不必等到响应体读取完毕，立即自行请求
+            }
+            long transferStart = System.nanoTime();
+            try {
+                httpResponse = readBody(upstreamResponse);
+            } catch (IOException e) {
+                // 尚未向客户端写出任何数据，可以像读取响应头失败一样处理
+                return serveStaleOrError(httpRequest, cachedResponse, clientOut, keepAlive, e);
+            }
+            metrics.recordSince(Phase.BODY_TRANSFER, transferStart);
+            if (cacheable) {
+                log.debug("目标服务器返回的新响应可以缓存，更新缓存");
+                cacheManager.put(httpRequest, httpResponse);
+                if (call != null) {
+                    call.complete(true);
                 }
+            } else {
+                log.debug("目标服务器返回的新响应不可缓存，不更新缓存");
+            }
+        }
 
-                System.out.println("[ProxyHandler] 已将响应转发至客户端");
+        keepAlive = keepAlive && HttpUtils.hasFramedBody(httpRequest.getMethod(), httpResponse);
+        long writeStart = System.nanoTime();
+        HttpUtils.forwardHttpResponse(HttpUtils.setConnectionHeaders(httpResponse, keepAlive), clientOut);
+        metrics.recordSince(Phase.CLIENT_WRITE, writeStart);
+        log.debug("已将响应转发至客户端{}", keepAlive ? "，保持连接" : "");
+        return keepAlive;
+    }
 
-            } catch (IOException e) {
-                System.err.println("[ProxyHandler] 与目标服务器通信时发生错误: " + e.getMessage());
+    /**
+     * 将缓存的响应返回给客户端，并通过 Age 头部告知缓存的年龄。
+     *
+     * @param cachedResponse 缓存的响应
+     * @param clientOut 客户端输出流
+     * @param keepAlive 客户端是否希望保持连接
+     * @return 如果处理完成后可以继续在该连接上读取下一个请求则返回 true
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private boolean serveCached(CachedResponse cachedResponse, OutputStream clientOut, boolean keepAlive)
+        throws IOException {
+        long writeStart = System.nanoTime();
+        HttpResponse cachedHead = cachedResponse.getHead()
+            .updateHeader("Age", String.valueOf(cachedResponse.getAge(System.currentTimeMillis())));
+        keepAlive = keepAlive && HttpUtils.hasFramedBody(cachedHead);
+        HttpUtils.forwardHttpResponse(HttpUtils.setConnectionHeaders(cachedHead, keepAlive), clientOut);
+        cachedResponse.writeBody(clientOut, clientSocket.getChannel());
+        metrics.recordSince(Phase.CLIENT_WRITE, writeStart);
+        log.debug("已将缓存响应转发至客户端{}", keepAlive ? "，保持连接" : "");
+        return keepAlive;
+    }
+
+    /**
+     * 无法从目标服务器获得响应时，如果允许则返回过期的缓存，否则向客户端返回 502 Bad Gateway（等待响应超时时为
+     * 504 Gateway Timeout），而不是直接关闭连接。
+     *
+     * @param httpRequest 客户端请求
+     * @param cachedResponse 缓存的响应，未命中时为 null
+     * @param clientOut 客户端输出流
+     * @param keepAlive 客户端是否希望保持连接
+     * @param cause 与目标服务器通信时发生的错误
+     * @return 如果处理完成后可以继续在该连接上读取下一个请求则返回 true
+     * @throws IOException 如果向客户端写出时发生 I/O 错误
+     */
+    private boolean serveStaleOrError(HttpRequest httpRequest, CachedResponse cachedResponse, OutputStream clientOut,
+        boolean keepAlive, IOException cause) throws IOException {
+        metrics.increment(Counter.UPSTREAM_ERRORS);
+        if (cachedResponse != null
+            && CachePolicy.canServeStaleIfError(httpRequest, cachedResponse, System.currentTimeMillis())) {
+            log.warn("目标服务器不可用，返回过期的缓存响应: {}", cause.getMessage());
+            return serveCached(cachedResponse, clientOut, keepAlive);
+        }
+        HttpStatus status = cause instanceof SocketTimeoutException ? HttpStatus.GATEWAY_TIMEOUT
+            : HttpStatus.BAD_GATEWAY;
+        log.warn("目标服务器不可用，返回 {}: {}", status.getCode(), cause.getMessage());
+        HttpUtils.forwardHttpResponse(HttpUtils.setConnectionHeaders(HttpUtils.createErrorResponse(status), keepAlive),
+            clientOut);
+        return keepAlive;
+    }
+
+    /**
+     * 在后台向目标服务器重新验证过期的缓存。同一 URI 已有请求正在访问目标服务器时不再重复验证，
+     * 后台任务过多时放弃本次验证，之后的请求会再次触发。
+     *
+     * @param httpRequest 客户端请求
+     * @param uri 请求的 URI
+     * @param cachedResponse 过期的缓存响应，后台任务只使用其响应头与缓存条目
+     */
+    private static void refreshInBackground(HttpRequest httpRequest, String uri, CachedResponse cachedResponse) {
+        SingleFlight<String, Boolean>.Call call = inFlightRequests.begin(uri);
+        if (!call.isLeader()) {
+            return; // 已有请求正在更新该 URI 的缓存
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try (call) {
+                    revalidate(httpRequest, cachedResponse, call);
+                } catch (IOException e) {
+                    log.warn("后台重新验证缓存失败: {}，{}", uri, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            call.close();
+            log.warn("后台验证任务过多，放弃本次后台验证: {}", uri);
+        }
+    }
+
+    /**
+     * 向目标服务器重新验证缓存：返回 304 时更新缓存的新鲜期，返回可缓存的新响应时替换缓存。
+     *
+     * @param httpRequest 客户端请求
+     * @param cachedResponse 过期的缓存响应
+     * @param call 该 URI 的合并请求调用，缓存更新后通过它通知等待的请求
+     * @throws IOException 如果与目标服务器通信失败
+     */
+    private static void revalidate(HttpRequest httpRequest, CachedResponse cachedResponse,
+        SingleFlight<String, Boolean>.Call call) throws IOException {
+        boolean conditional = CachePolicy.hasValidator(cachedResponse.getHead());
+        HttpRequest upstreamRequest = conditional
+            ? CachePolicy.addConditionalHeaders(httpRequest, cachedResponse.getHead()) : httpRequest;
+        HttpResponse httpResponse = readBody(exchange(HttpUtils.setUpstreamConnectionHeaders(upstreamRequest)));
+        if (conditional && httpResponse.getStatusCode().equals(HttpStatus.NOT_MODIFIED)) {
+            cacheManager.revalidated(cachedResponse, httpResponse);
+            log.debug("后台重新验证完成，缓存仍然有效: {}", httpRequest.getUri());
+            call.complete(true);
+        } else if (CachePolicy.isCacheable(httpRequest, httpResponse)) {
+            cacheManager.put(httpRequest, httpResponse);
+            log.debug("后台重新验证完成，已更新缓存: {}", httpRequest.getUri());
+            call.complete(true);
+        } else {
+            log.debug("后台重新验证得到的响应不可缓存，状态码: {}", httpResponse.getStatusCode());
+        }
+    }
+
+    /**
+     * 通过连接池与目标服务器完成一次请求转发并读取响应头。如果复用的空闲连接已被目标服务器关闭，则对幂等请求换用新连接重试一次；
+     * 等待响应超时说明目标服务器响应缓慢而不是连接失效，不再重试。
+     *
+     * @param httpRequest 要转发的请求
+     * @return 目标服务器的响应头及其所在的连接，响应体尚未读取
+     * @throws IOException 如果与目标服务器通信失败
+     */
+    private static UpstreamResponse exchange(HttpRequest httpRequest) throws IOException {
+        String host = httpRequest.getHost();
+        int port = httpRequest.getPort();
+        long connectStart = System.nanoTime();
+        UpstreamConnection connection = connectionPool.acquire(host, port);
+        metrics.recordSince(Phase.UPSTREAM_CONNECT, connectStart);
+        try {
+            return exchange(connection, httpRequest);
+        } catch (IOException e) {
+            String method = httpRequest.getMethod();
+            boolean idempotent = HttpConstant.GET.equals(method) || "HEAD".equals(method);
+            if (!connection.isReused() || !idempotent || e instanceof SocketTimeoutException) {
+                log.error("与目标服务器通信时发生错误: {}", e.getMessage());
                 throw e;
             }
+            log.debug("复用的连接已失效，使用新连接重试: {}", e.getMessage());
+            connectStart = System.nanoTime();
+            UpstreamConnection fresh = connectionPool.connect(host, port);
+            metrics.recordSince(Phase.UPSTREAM_CONNECT, connectStart);
+            return exchange(fresh, httpRequest);
         }
     }
+
+    /**
+     * 在指定连接上转发请求并读取响应头。
+     *
+     * @param connection 到目标服务器的连接
+     * @param httpRequest 要转发的请求
+     * @return 目标服务器的响应头及其所在的连接
+     * @throws IOException 如果与目标服务器通信失败
+     */
+    private static UpstreamResponse exchange(UpstreamConnection connection, HttpRequest httpRequest)
+        throws IOException {
+        Socket serverSocket = connection.getSocket();
+        try {
+            log.debug("{}目标服务器: {}:{}", connection.isReused() ? "复用" : "成功连接", connection.getHost(),
+                connection.getPort());
+            long requestStart = System.nanoTime();
+            HttpUtils.forwardHttpRequest(httpRequest, serverSocket.getOutputStream());
+            log.debug("已将请求转发至目标服务器");
+            HttpResponse head = HttpUtils.parseHttpResponseHead(connection.getInputStream());
+            metrics.recordSince(Phase.FIRST_BYTE, requestStart);
+            return new UpstreamResponse(connection, httpRequest.getMethod(), head);
+        } catch (IOException e) {
+            connectionPool.discard(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * 读取完整的响应体，然后归还或关闭目标服务器连接。
+     *
+     * @param upstreamResponse 目标服务器的响应头及其所在的连接
+     * @return 带有响应体的完整响应
+     * @throws IOException 如果与目标服务器通信失败
+     */
+    private static HttpResponse readBody(UpstreamResponse upstreamResponse) throws IOException {
+        UpstreamConnection connection = upstreamResponse.connection();
+        try {
+            HttpResponse httpResponse =
+                HttpUtils.parseHttpResponseBody(upstreamResponse.method(), upstreamResponse.head(),
+                    connection.getInputStream());
+            releaseConnection(upstreamResponse);
+            return httpResponse;
+        } catch (IOException e) {
+            connectionPool.discard(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * 将响应体流式转发给客户端，然后归还或关闭目标服务器连接。不可缓存的固定长度响应体直接在通道之间传输。
+     *
+     * @param upstreamResponse 目标服务器的响应头及其所在的连接
+     * @param clientOut 客户端输出流
+     * @param tee 同时接收响应体的输出流，可以为 null
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void relayBody(UpstreamResponse upstreamResponse, OutputStream clientOut, OutputStream tee)
+        throws IOException {
+        UpstreamConnection connection = upstreamResponse.connection();
+        try {
+            SocketChannel serverChannel = connection.getSocket().getChannel();
+            SocketChannel clientChannel = clientSocket.getChannel();
+            String contentLength = upstreamResponse.head().getHeaders().get("Content-Length");
+            boolean hasBody = HttpUtils.hasBody(upstreamResponse.method(), upstreamResponse.head());
+            if (tee == null && ProxyConfig.ZERO_COPY_SPLICE && hasBody && contentLength != null
+                && serverChannel != null && clientChannel != null) {
+                // 不可缓存的固定长度响应体是纯透传数据，直接在通道之间传输。
+                // 读取响应头时已读入缓冲区的部分响应体需要先写出，剩余部分再从通道读取
+                long remaining = Long.parseLong(contentLength);
+                remaining -= connection.getInputStream().drainBuffered(clientOut, remaining);
+                clientOut.flush();
+                if (spliceBuffer == null) {
+                    spliceBuffer = spliceBuffers.acquire();
+                }
+                HttpUtils.spliceBody(serverChannel, clientChannel, remaining, spliceBuffer);
+            } else {
+                HttpUtils.relayHttpBody(upstreamResponse.method(), upstreamResponse.head(), connection.getInputStream(),
+                    clientOut, tee);
+            }
+            releaseConnection(upstreamResponse);
+        } catch (IOException e) {
+            connectionPool.discard(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * 响应读取完毕后，如果目标服务器允许，则将连接放回连接池，否则关闭连接。
+     *
+     * @param upstreamResponse 目标服务器的响应头及其所在的连接
+     */
+    private static void releaseConnection(UpstreamResponse upstreamResponse) {
+        if (HttpUtils.isKeepAlive(upstreamResponse.method(), upstreamResponse.head())) {
+            connectionPool.release(upstreamResponse.connection());
+        } else {
+            connectionPool.discard(upstreamResponse.connection());
+        }
+    }
+
+    /**
+     * 目标服务器的响应头及其所在的连接，响应体尚未读取。
+     *
+     * @param connection 到目标服务器的连接
+     * @param method 请求方法，决定响应是否带有响应体
+     * @param head 响应头
+     */
+    private record UpstreamResponse(UpstreamConnection connection, String method, HttpResponse head) {
+    }
 }
@@ -0,0 +1,258 @@
+package cn.edu.hit.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import cn.edu.hit.config.ProxyConfig;
+import cn.edu.hit.pool.BufferPool;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * CONNECT 隧道：在客户端与目标服务器之间原样双向转发字节（例如 TLS 流量），代理不解析其中的内容。
+ * <p>
+ * 两个方向各使用一个从缓冲区池租用的直接缓冲区，隧道结束后由 {@link #release()} 归还。缓冲区已满时暂停读取来源一端，
+ * 直到目的一端写出数据，因此每条隧道占用的内存有上限，较慢的一端会通过 TCP 流量控制减慢较快的一端。
+ * 一端关闭输出（读到 EOF）时，在缓冲区中的数据写完后关闭另一端的输出，另一个方向仍可继续传输（半关闭）；两个方向都结束后隧道结束。
+ * <p>
+ * 隧道本身不阻塞：NIO 模式下由事件循环在通道就绪时调用 {@link #pump()}，其他模式下由处理线程调用 {@link #run(long)}
+ * 使用独立的 Selector 驱动。
+ */
+@Slf4j
+class Tunnel {
+
+    // 隧道建立后返回给客户端的响应
+    static final byte[] ESTABLISHED_RESPONSE =
+        "HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int MAX_TRANSFERS_PER_PUMP = 16; // 每次调用每个方向最多读写的轮数，避免一条隧道长时间占用事件循环
+
+    // 隧道缓冲区池，所有隧道共享
+    static final BufferPool BUFFERS =
+        new BufferPool(ProxyConfig.TUNNEL_BUFFER_SIZE, true, ProxyConfig.BUFFER_POOL_MAX_IDLE);
+
+    private final SocketChannel clientChannel; // 客户端通道
+    private final SocketChannel serverChannel; // 目标服务器通道
+    private final Direction upstream; // 客户端到目标服务器方向
+    private final Direction downstream; // 目标服务器到客户端方向
+    private long lastActivity = System.currentTimeMillis(); // 最近一次传输数据的时间
+    private boolean released; // 缓冲区是否已归还
+
+    /**
+     * 构造函数。两个通道必须已连接，并且已设置为非阻塞模式。
+     *
+     * @param clientChannel 客户端通道
+     * @param serverChannel 目标服务器通道
+     * @param clientData 已从客户端读取、尚未转发给目标服务器的数据
+     * @param serverData 需要首先写给客户端的数据（通常是 {@link #ESTABLISHED_RESPONSE}）
+     */
+    Tunnel(SocketChannel clientChannel, SocketChannel serverChannel, ByteBuffer clientData, ByteBuffer serverData) {
+        this.clientChannel = clientChannel;
+        this.serverChannel = serverChannel;
+        this.upstream = new Direction(clientChannel, serverChannel, clientData);
+        this.downstream = new Direction(serverChannel, clientChannel, serverData);
+    }
+
+    /**
+     * 在两个方向上尽可能多地传输数据，直到没有通道就绪。
+     *
+     * @return 如果传输了数据或状态发生了变化则返回 true
+     * @throws IOException 如果读写通道时发生错误（例如连接被重置），调用方应关闭隧道
+     */
+    boolean pump() throws IOException {
+        boolean progress = upstream.transfer() | downstream.transfer();
+        if (progress) {
+            lastActivity = System.currentTimeMillis();
+        }
+        return progress;
+    }
+
+    /**
+     * 获取客户端通道当前需要关注的事件。
+     *
+     * @return 选择键的兴趣集合
+     */
+    int clientInterestOps() {
+        return upstream.readInterestOps() | downstream.writeInterestOps();
+    }
+
+    /**
+     * 获取目标服务器通道当前需要关注的事件。
+     *
+     * @return 选择键的兴趣集合
+     */
+    int serverInterestOps() {
+        return downstream.readInterestOps() | upstream.writeInterestOps();
+    }
+
+    /**
+     * 判断两个方向是否都已结束。
+     *
+     * @return 如果隧道已结束则返回 true
+     */
+    boolean isFinished() {
+        return upstream.finished && downstream.finished;
+    }
+
+    /**
+     * 获取最近一次传输数据的时间。
+     *
+     * @return 时间（毫秒）
+     */
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * 获取客户端发往目标服务器的字节数。
+     *
+     * @return 字节数
+     */
+    long getBytesUp() {
+        return upstream.bytes;
+    }
+
+    /**
+     * 获取目标服务器发往客户端的字节数。
+     *
+     * @return 字节数
+     */
+    long getBytesDown() {
+        return downstream.bytes;
+    }
+
+    /**
+     * 将两个方向的缓冲区归还缓冲区池。隧道结束或关闭后调用，之后不能再传输数据；重复调用没有效果。
+     */
+    void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        BUFFERS.release(upstream.buffer);
+        BUFFERS.release(downstream.buffer);
+    }
+
+    /**
+     * 在当前线程中使用独立的 Selector 驱动隧道，直到隧道结束、发生错误或空闲超时。返回前不关闭通道。
+     *
+     * @param idleTimeoutMillis 两个方向都没有数据传输的最长时间（毫秒）
+     * @throws IOException 如果读写通道时发生错误
+     */
+    void run(long idleTimeoutMillis) throws IOException {
+        try (Selector selector = Selector.open()) {
+            SelectionKey clientKey = clientChannel.register(selector, 0);
+            SelectionKey serverKey = serverChannel.register(selector, 0);
+            pump();
+            while (!isFinished()) {
+                clientKey.interestOps(clientInterestOps());
+                serverKey.interestOps(serverInterestOps());
+                selector.select(idleTimeoutMillis);
+                selector.selectedKeys().clear();
+                if (!pump() && System.currentTimeMillis() - lastActivity >= idleTimeoutMillis) {
+                    log.info("隧道空闲超时，关闭隧道");
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 隧道的一个方向：从来源通道读入缓冲区，再从缓冲区写入目的通道。缓冲区平时处于写入模式，position 即待转发的字节数。
+     */
+    private static final class Direction {
+
+        private final SocketChannel source; // 来源通道
+        private final SocketChannel sink; // 目的通道
+        private final ByteBuffer buffer; // 待转发的数据
+        private boolean eof; // 来源通道是否已读到 EOF
+        private boolean finished; // 是否已关闭目的通道的输出
+        private long bytes; // 已转发的字节数
+
+        /**
+         * 构造函数。
+         *
+         * @param source 来源通道
+         * @param sink 目的通道
+         * @param initialData 需要首先写入目的通道的数据，可以为 null
+         */
+        private Direction(SocketChannel source, SocketChannel sink, ByteBuffer initialData) {
+            this.source = source;
+            this.sink = sink;
+            int initialSize = initialData == null ? 0 : initialData.remaining();
+            // 初始数据超出池中缓冲区大小时单独分配，归还时由缓冲区池忽略
+            this.buffer = initialSize > BUFFERS.getBufferSize()
+                ? ByteBuffer.allocateDirect(initialSize) : BUFFERS.acquire();
+            if (initialData != null) {
+                buffer.put(initialData);
+            }
+        }
+
+        /**
+         * 交替读写直到没有进展或达到轮数上限（剩余数据等待下次就绪时继续），来源读到 EOF 且缓冲区已写空时关闭目的通道的输出。
+         *
+         * @return 如果传输了数据或状态发生了变化则返回 true
+         * @throws IOException 如果读写通道时发生错误
+         */
+        private boolean transfer() throws IOException {
+            if (finished) {
+                return false;
+            }
+            boolean progress = false;
+            boolean moved = true;
+            for (int i = 0; moved && i < MAX_TRANSFERS_PER_PUMP; i++) {
+                moved = false;
+                if (!eof && buffer.hasRemaining()) {
+                    int bytesRead = source.read(buffer);
+                    if (bytesRead == -1) {
+                        eof = true;
+                        moved = true;
+                    } else if (bytesRead > 0) {
+                        moved = true;
+                    }
+                }
+                if (buffer.position() > 0) {
+                    buffer.flip();
+                    int bytesWritten = sink.write(buffer);
+                    buffer.compact();
+                    if (bytesWritten > 0) {
+                        bytes += bytesWritten;
+                        moved = true;
+                    }
+                }
+                progress |= moved;
+            }
+            if (eof && buffer.position() == 0) {
+                finished = true;
+                try {
+                    sink.shutdownOutput(); // 将 EOF 传递给另一端
+                } catch (IOException e) {
+                    // 另一端已经关闭，无需再传递 EOF
+                }
+                progress = true;
+            }
+            return progress;
+        }
+
+        /**
+         * 获取来源通道需要关注的事件：缓冲区有空间且尚未读到 EOF 时关注可读。
+         *
+         * @return 选择键的兴趣集合
+         */
+        private int readInterestOps() {
+            return !eof && buffer.hasRemaining() ? SelectionKey.OP_READ : 0;
+        }
+
+        /**
+         * 获取目的通道需要关注的事件：缓冲区中有待写出的数据时关注可写。
+         *
+         * @return 选择键的兴趣集合
+         */
+        private int writeInterestOps() {
+            return buffer.position() > 0 ? SelectionKey.OP_WRITE : 0;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package cn.edu.hit.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import cn.edu.hit.core.HttpHeaders;
+
+/**
+ * 分块传输编码（chunked）的增量解码器。
+ * <p>
+ * 解码器是一个状态机：块大小行、块末尾的 \r\n 与尾部字段逐字节处理，块数据按段整体写出。输入可以在任意位置被截断，
+ * 未处理完的状态保存在解码器中，下一段输入到达后继续，因此既可以解码流中读取的数据，也可以解码事件循环中陆续到达的数据。
+ * 块扩展被忽略，尾部字段解析后由 {@link #getTrailers()} 返回。读到最后一个块之后的空行时解码结束，不再消费之后的数据
+ * （它们属于同一连接上的下一个消息）。
+ */
+public class ChunkedDecoder {
+
+    private static final int MAX_SIZE_DIGITS = 15; // 块大小的最大位数，保证不会溢出 long
+    private static final int MAX_LINE_LENGTH = 8 * 1024; // 块扩展与尾部字段行的最大长度
+
+    private final HttpHeaders trailers = new HttpHeaders(); // 尾部字段
+    private final StringBuilder line = new StringBuilder(); // 正在读取的尾部字段行
+    private State state = State.SIZE; // 当前状态
+    private long chunkRemaining; // 当前块大小或剩余的块数据长度
+    private int sizeDigits; // 已读取的块大小位数
+    private int extensionLength; // 已跳过的块扩展长度
+    private long bodyLength; // 已解码的数据长度
+
+    /**
+     * 解码一段输入，将块数据写出到输出流。解码结束后不再消费输入。
+     *
+     * @param data 输入数据
+     * @param offset 起始位置
+     * @param length 数据长度
+     * @param out 接收解码后数据的输出流，可以为 null（只检查消息边界）
+     * @return 消费的字节数，解码结束时可能小于 length
+     * @throws IOException 如果数据不符合分块传输编码，或写出数据时发生 I/O 错误
+     */
+    public int decode(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        int position = offset;
+        int end = offset + length;
+        while (position < end && state != State.DONE) {
+            if (state == State.DATA) {
+                int n = (int)Math.min(chunkRemaining, end - position);
+                if (out != null) {
+                    out.write(data, position, n);
+                }
+                position += n;
+                chunkRemaining -= n;
+                bodyLength += n;
+                if (chunkRemaining == 0) {
+                    state = State.DATA_CR;
+                }
+                continue;
+            }
+            int b = data[position++] & 0xff;
+            switch (state) {
+                case SIZE -> readSize(b);
+                case EXTENSION -> {
+                    if (b == '\r') {
+                        state = State.SIZE_LF;
+                    } else if (++extensionLength > MAX_LINE_LENGTH) {
+                        throw new IOException("块扩展过长");
+                    }
+                }
+                case SIZE_LF -> {
+                    expect(b, '\n');
+                    state = chunkRemaining == 0 ? State.TRAILER : State.DATA;
+                }
+                case DATA_CR -> {
+                    expect(b, '\r');
+                    state = State.DATA_LF;
+                }
+                case DATA_LF -> {
+                    expect(b, '\n');
+                    sizeDigits = 0;
+                    extensionLength = 0;
+                    state = State.SIZE;
+                }
+                case TRAILER -> {
+                    if (b == '\r') {
+                        state = State.TRAILER_LF;
+                    } else if (line.length() >= MAX_LINE_LENGTH) {
+                        throw new IOException("尾部字段过长");
+                    } else {
+                        line.append((char)b);
+                    }
+                }
+                case TRAILER_LF -> {
+                    expect(b, '\n');
+                    state = line.isEmpty() ? State.DONE : State.TRAILER;
+                    addTrailer();
+                }
+                default -> throw new IllegalStateException("未知的解码状态: " + state);
+            }
+        }
+        return position - offset;
+    }
+
+    /**
+     * 判断是否已读到消息体的结尾（最后一个块与尾部字段之后的空行）。
+     *
+     * @return 如果解码已结束则返回 true
+     */
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    /**
+     * 获取尾部字段，解码结束前可能不完整。
+     *
+     * @return 尾部字段
+     */
+    public HttpHeaders getTrailers() {
+        return trailers;
+    }
+
+    /**
+     * 获取已解码的数据长度。
+     *
+     * @return 数据长度
+     */
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * 处理块大小行中的一个字节：16 进制数字，之后是可选的块扩展（以 ; 或空白开始）与 \r\n。
+     *
+     * @param b 字节
+     * @throws IOException 如果块大小无效
+     */
+    private void readSize(int b) throws IOException {
+        int digit = Character.digit((char)b, 16);
+        if (digit >= 0 && b < 0x80) {
+            if (++sizeDigits > MAX_SIZE_DIGITS) {
+                throw new IOException("块大小过大");
+            }
+            chunkRemaining = chunkRemaining << 4 | digit;
+        } else if (sizeDigits == 0) {
+            throw new IOException("无效的块大小行");
+        } else if (b == ';' || b == ' ' || b == '\t') {
+            state = State.EXTENSION;
+        } else if (b == '\r') {
+            state = State.SIZE_LF;
+        } else {
+            throw new IOException("无效的块大小行");
+        }
+    }
+
+    /**
+     * 检查分隔符。
+     *
+     * @param b 读取到的字节
+     * @param expected 期望的字节
+     * @throws IOException 如果两者不同
+     */
+    private static void expect(int b, char expected) throws IOException {
+        if (b != expected) {
+            throw new IOException("分块传输编码格式错误，缺少行结束符");
+        }
+    }
+
+    /**
+     * 将已读取的尾部字段行解析为 name: value 并清空，忽略没有冒号的行。
+     */
+    private void addTrailer() {
+        int colon = line.indexOf(":");
+        if (colon > 0) {
+            trailers.add(line.substring(0, colon), line.substring(colon + 1).strip());
+        }
+        line.setLength(0);
+    }
+
+    /**
+     * 解码器的状态。
+     */
+    private enum State {
+
+        SIZE, // 块大小
+        EXTENSION, // 块扩展，直到 \r
+        SIZE_LF, // 块大小行末尾的 \n
+        DATA, // 块数据
+        DATA_CR, // 块数据之后的 \r
+        DATA_LF, // 块数据之后的 \n
+        TRAILER, // 尾部字段行，空行表示结束
+        TRAILER_LF, // 尾部字段行末尾的 \n
+        DONE // 已结束
+    }
+}
@@ -0,0 +1,160 @@
+package cn.edu.hit.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import cn.edu.hit.core.HttpHeaders;
+
+/**
+ * 分块传输编码（chunked）的输出流。
+ * <p>
+ * 较小的写入先合并到缓冲区中，缓冲区写满或调用 {@link #flush()} 时作为一个块写出；缓冲区在数据之前预留了块大小行的位置，
+ * 之后预留了块末尾的 \r\n，因此一个块只需要对底层输出流写一次。不小于缓冲区大小的写入不经过缓冲区，直接作为一个块写出，
+ * 保留调用方的块边界。{@link #finish(HttpHeaders)} 写出最后一个块与尾部字段；关闭该流不会关闭底层输出流。
+ */
+public class ChunkedEncoder extends OutputStream {
+
+    private static final byte[] CRLF = {'\r', '\n'}; // 行结束符
+    private static final int HEADER_RESERVE = 8 + CRLF.length; // 块大小行预留的长度：最多 8 位 16 进制数与 \r\n
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1); // 16 进制数字
+
+    private final OutputStream out; // 底层输出流
+    private final byte[] buffer; // 预留块大小行与 \r\n 的缓冲区
+    private final int capacity; // 缓冲区中可容纳的数据长度
+    private final byte[] header = new byte[HEADER_RESERVE]; // 直接写出的块使用的块大小行
+    private int count; // 缓冲区中的数据长度
+    private boolean finished; // 是否已写出最后一个块
+
+    /**
+     * 构造函数。
+     *
+     * @param out 底层输出流
+     * @param capacity 合并写入的缓冲区大小，也是经过缓冲区的块的最大长度
+     */
+    public ChunkedEncoder(OutputStream out, int capacity) {
+        this.out = out;
+        this.capacity = capacity;
+        this.buffer = new byte[HEADER_RESERVE + capacity + CRLF.length];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == capacity) {
+            writeBuffer();
+        }
+        buffer[HEADER_RESERVE + count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return; // 长度为 0 的块表示结束，不能写出
+        }
+        if (len >= capacity) {
+            writeBuffer();
+            int start = encodeSize(len, header, header.length);
+            out.write(header, start, header.length - start);
+            out.write(b, off, len);
+            out.write(CRLF);
+            return;
+        }
+        if (len > capacity - count) {
+            writeBuffer();
+        }
+        System.arraycopy(b, off, buffer, HEADER_RESERVE + count, len);
+        count += len;
+    }
+
+    /**
+     * 将缓冲区中的数据作为一个块写出，并刷新底层输出流。
+     *
+     * @throws IOException 如果发生 I/O 错误
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBuffer();
+        out.flush();
+    }
+
+    /**
+     * 写出缓冲区中剩余的数据、最后一个块与尾部字段，并刷新底层输出流。之后不能再写入数据。
+     *
+     * @param trailers 尾部字段，可以为 null
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public void finish(HttpHeaders trailers) throws IOException {
+        if (finished) {
+            return;
+        }
+        writeBuffer();
+        finished = true;
+        StringBuilder lastChunk = new StringBuilder("0\r\n");
+        if (trailers != null) {
+            lastChunk.append(trailers);
+        }
+        lastChunk.append("\r\n");
+        out.write(lastChunk.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * 结束编码（不带尾部字段），不关闭底层输出流。
+     *
+     * @throws IOException 如果发生 I/O 错误
+     */
+    @Override
+    public void close() throws IOException {
+        finish(null);
+    }
+
+    /**
+     * 将缓冲区中的数据作为一个块写出：在预留位置填入块大小行与 \r\n，只调用一次底层输出流的 write。
+     *
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private void writeBuffer() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        int start = encodeSize(count, buffer, HEADER_RESERVE);
+        int end = HEADER_RESERVE + count;
+        buffer[end++] = '\r';
+        buffer[end++] = '\n';
+        out.write(buffer, start, end - start);
+        count = 0;
+    }
+
+    /**
+     * 将块大小行（16 进制数与 \r\n）写在指定位置之前。
+     *
+     * @param size 块大小
+     * @param target 目标数组
+     * @param end 块大小行的结束位置（不含）
+     * @return 块大小行的起始位置
+     */
+    private static int encodeSize(int size, byte[] target, int end) {
+        int position = end;
+        target[--position] = '\n';
+        target[--position] = '\r';
+        int remaining = size;
+        do {
+            target[--position] = HEX_DIGITS[remaining & 0xf];
+            remaining >>>= 4;
+        } while (remaining != 0);
+        return position;
+    }
+
+    /**
+     * 检查是否仍可写入数据。
+     *
+     * @throws IOException 如果已写出最后一个块
+     */
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("分块传输已结束");
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package cn.edu.hit.utils;
+
+import cn.edu.hit.core.HttpHeaders;
+
+/**
+ * 从输入流中解析出的 HTTP 头部。请求的起始行为“方法 URI 版本”，响应的起始行为“版本 状态码 状态描述”。
+ *
+ * @param first 起始行的第一部分
+ * @param second 起始行的第二部分
+ * @param third 起始行的第三部分
+ * @param headers 头部字段
+ */
+public record HttpHead(String first, String second, String third, HttpHeaders headers) {
+}
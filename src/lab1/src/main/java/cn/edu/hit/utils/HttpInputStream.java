@@ -0,0 +1,280 @@
+package cn.edu.hit.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import cn.edu.hit.core.HttpHeaders;
+
+/**
+ * 带缓冲区的 HTTP 输入流。头部解析直接在可复用的字节缓冲区中查找 \r\n\r\n 并就地拆分起始行与头部字段，
+ * 头部之后已读入缓冲区的数据会留给后续的消息体读取，因此同一连接上的所有读取都必须经过同一个 HttpInputStream。
+ */
+public class HttpInputStream extends InputStream {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024; // 初始缓冲区大小
+    private static final int MAX_HEADER_SIZE = 64 * 1024; // 允许的最大头部大小
+
+    private final InputStream in; // 底层输入流
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE]; // 缓冲区
+    private int position; // 下一个待读取字节的位置
+    private int limit; // 缓冲区中有效数据的结束位置
+
+    /**
+     * 构造函数，包装底层输入流。
+     *
+     * @param in 底层输入流
+     */
+    public HttpInputStream(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * 读取并解析一个完整的 HTTP 头部（起始行与头部字段）。
+     *
+     * @return 解析后的头部，如果在读取到任何数据之前流已结束则返回 null
+     * @throws IOException 如果发生 I/O 错误、头部不完整或头部过大
+     */
+    public HttpHead readHead() throws IOException {
+        int scanned = 0; // 已扫描的字节数（相对于 position，缓冲区压缩后仍然有效）
+        int headerEnd;
+        while ((headerEnd = indexOfHeaderEnd(position + scanned)) == -1) {
+            scanned = Math.max(0, limit - position - 3); // 下次只扫描新读入的数据
+            if (!fill()) {
+                if (limit == position) {
+                    return null; // 连接已关闭，没有更多消息
+                }
+                throw new IOException("流已关闭，未能完整读取头部");
+            }
+        }
+
+        // 起始行：按前两个空格拆分为三部分，第三部分可以包含空格（例如状态描述）
+        int lineEnd = indexOfLineEnd(position, headerEnd);
+        int firstSpace = indexOf(' ', position, lineEnd);
+        int secondSpace = firstSpace == -1 ? -1 : indexOf(' ', firstSpace + 1, lineEnd);
+        if (firstSpace == -1) {
+            throw new IOException("无效的起始行: " + string(position, lineEnd));
+        }
+        String first = string(position, firstSpace);
+        String second = string(firstSpace + 1, secondSpace == -1 ? lineEnd : secondSpace);
+        String third = secondSpace == -1 ? "" : string(secondSpace + 1, lineEnd);
+
+        // 头部字段：每行为 name: value 格式，忽略值两侧的空白
+        HttpHeaders headers = new HttpHeaders();
+        int lineStart = lineEnd + 2;
+        while (lineStart < headerEnd) {
+            lineEnd = indexOfLineEnd(lineStart, headerEnd);
+            int colon = indexOf(':', lineStart, lineEnd);
+            if (colon > lineStart) {
+                int valueStart = colon + 1;
+                int valueEnd = lineEnd;
+                while (valueStart < valueEnd && isWhitespace(buffer[valueStart])) {
+                    valueStart++;
+                }
+                while (valueEnd > valueStart && isWhitespace(buffer[valueEnd - 1])) {
+                    valueEnd--;
+                }
+                headers.add(string(lineStart, colon), string(valueStart, valueEnd)); // 同名字段全部保留
+            }
+            lineStart = lineEnd + 2;
+        }
+
+        position = headerEnd + 4; // 跳过 \r\n\r\n，剩余数据留给消息体
+        return new HttpHead(first, second, third, headers);
+    }
+
+    /**
+     * 等待至少一个字节可读，用于区分持久连接上等待下一个请求的空闲时间与读取请求本身的时间。
+     *
+     * @return 如果有数据可读则返回 true，流已结束则返回 false
+     * @throws IOException 如果发生 I/O 错误（包括读取超时）
+     */
+    public boolean awaitData() throws IOException {
+        return position < limit || fill();
+    }
+
+    /**
+     * 获取缓冲区中尚未读取的字节数。
+     *
+     * @return 已缓冲的字节数
+     */
+    public int buffered() {
+        return limit - position;
+    }
+
+    /**
+     * 将缓冲区中尚未读取的数据（最多 max 个字节）写出到输出流，用于绕过缓冲区直接读取底层通道之前。
+     *
+     * @param out 输出流
+     * @param max 最多写出的字节数
+     * @return 实际写出的字节数
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public int drainBuffered(OutputStream out, long max) throws IOException {
+        int n = (int)Math.min(buffered(), max);
+        out.write(buffer, position, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * 读取并解码一个分块传输的消息体。数据在缓冲区中就地交给解码器，解码器在消息体结尾处停止，
+     * 之后已读入缓冲区的数据留给同一连接上的下一个消息。
+     *
+     * @param decoder 解码器
+     * @param raw 接收原始编码数据（保留块边界、块扩展与尾部字段）的输出流，可以为 null
+     * @param data 接收解码后数据的输出流，可以为 null
+     * @throws IOException 如果发生 I/O 错误、数据格式错误或消息体不完整
+     */
+    public void readChunked(ChunkedDecoder decoder, OutputStream raw, OutputStream data) throws IOException {
+        while (!decoder.isDone()) {
+            if (position == limit && !fill()) {
+                throw new IOException("流已关闭，未能完全读取分块传输的消息体");
+            }
+            int consumed = decoder.decode(buffer, position, limit - position, data);
+            if (raw != null) {
+                raw.write(buffer, position, consumed);
+            }
+            position += consumed;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit) {
+            if (len >= buffer.length) {
+                return in.read(b, off, len); // 缓冲区为空且请求的数据较多时直接读取，避免多一次复制
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffered() + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * 从底层输入流读取更多数据到缓冲区，必要时压缩或扩容缓冲区。
+     *
+     * @return 如果读取到了数据则返回 true，流已结束则返回 false
+     * @throws IOException 如果发生 I/O 错误或头部超过上限
+     */
+    private boolean fill() throws IOException {
+        if (position == limit) {
+            position = limit = 0;
+        }
+        if (limit == buffer.length) {
+            if (position > 0) {
+                // 丢弃已读取的数据
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            } else if (buffer.length < MAX_HEADER_SIZE) {
+                byte[] larger = new byte[Math.min(buffer.length * 2, MAX_HEADER_SIZE)];
+                System.arraycopy(buffer, 0, larger, 0, limit);
+                buffer = larger;
+            } else {
+                throw new IOException("头部过大，超过 " + MAX_HEADER_SIZE + " 字节");
+            }
+        }
+        int bytesRead = in.read(buffer, limit, buffer.length - limit);
+        if (bytesRead == -1) {
+            return false;
+        }
+        limit += bytesRead;
+        return true;
+    }
+
+    /**
+     * 在缓冲区中查找头部结束标志 \r\n\r\n。
+     *
+     * @param from 起始位置
+     * @return 结束标志的起始位置，未找到则返回 -1
+     */
+    private int indexOfHeaderEnd(int from) {
+        for (int i = from; i <= limit - 4; i++) {
+            if (buffer[i + 3] == '\n' && buffer[i] == '\r' && buffer[i + 1] == '\n' && buffer[i + 2] == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在缓冲区中查找行结束标志 \r\n。
+     *
+     * @param from 起始位置
+     * @param to 结束位置
+     * @return 行结束标志的位置，未找到则返回 to
+     */
+    private int indexOfLineEnd(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * 在缓冲区的指定范围内查找字节。
+     *
+     * @param b 要查找的字节
+     * @param from 起始位置
+     * @param to 结束位置
+     * @return 字节的位置，未找到则返回 -1
+     */
+    private int indexOf(char b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 将缓冲区的指定范围解码为字符串。
+     *
+     * @param from 起始位置
+     * @param to 结束位置
+     * @return 解码后的字符串
+     */
+    private String string(int from, int to) {
+        return new String(buffer, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 判断字节是否为空格或制表符。
+     *
+     * @param b 字节
+     * @return 如果是空白字符则返回 true
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
@@ -6,57 +6,61 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
-import java.util.HashMap;
-import java.util.Map;
 
+import cn.edu.hit.config.ProxyConfig;
 import cn.edu.hit.core.HttpConstant;
+import cn.edu.hit.core.HttpHeaders;
 import cn.edu.hit.core.HttpRequest;
 import cn.edu.hit.core.HttpResponse;
 import cn.edu.hit.core.HttpStatus;
+import cn.edu.hit.pool.BufferPool;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * HTTP 工具类，提供解析 HTTP 请求和响应、转发请求和响应等功能。
  */
+@Slf4j
 public class HttpUtils {
 
+    private static final int RELAY_BUFFER_SIZE = 8192; // 流式转发响应体时的缓冲区大小
+
+    // 流式读写响应体使用的堆缓冲区，经由输入输出流读写时需要底层数组
+    public static final BufferPool RELAY_BUFFERS =
+        new BufferPool(RELAY_BUFFER_SIZE, false, ProxyConfig.BUFFER_POOL_MAX_IDLE);
+
     /**
      * 解析 HTTP 请求。
      *
-     * @param clientIn 客户端输入流
-     * @return 解析后的 HttpRequest 对象
+     * @param clientIn 客户端输入流，同一连接上的后续请求必须继续使用该输入流读取
+     * @return 解析后的 HttpRequest 对象，如果客户端在发送任何数据前关闭了连接则返回 null
      * @throws IOException 如果发生 I/O 错误
      */
-    public static HttpRequest parseHttpRequest(InputStream clientIn) throws IOException {
+    public static HttpRequest parseHttpRequest(HttpInputStream clientIn) throws IOException {
         HttpRequest.Builder builder = HttpRequest.newBuilder();
-        // 读取请求行
-        String httpHeader = parseHttpHeader(clientIn);
-        String[] lines = httpHeader.split("\r\n");
-        String[] requestLineParts = lines[0].split(" ");
-        String method = requestLineParts[0]; // 请求方法
-        URI uri = URI.create(requestLineParts[1]); // 请求 URI
-        String version = requestLineParts[2]; // HTTP 版本
-        builder.method(method).uri(uri).version(version);
-
-        // 解析头部字段（从第 2 行开始）
-        Map<String, String> headers = new HashMap<>();
-        for (int i = 1; i < lines.length; i++) {
-            if (lines[i].isEmpty()) {
-                continue; // 跳过空行
-            }
-            // 每个头部字段是 key: value 格式
-            String[] headerParts = lines[i].split(": ", 2);
-            if (headerParts.length == 2) {
-                headers.put(headerParts[0], headerParts[1]);
-            }
+        // 读取请求行与头部字段
+        HttpHead head = clientIn.readHead();
+        if (head == null) {
+            return null; // 连接已关闭，没有更多请求
         }
+        String method = head.first(); // 请求方法
+        // CONNECT 的请求目标是 authority 形式（host:port），补上 "//" 后才能解析出主机名与端口
+        URI uri = URI.create("CONNECT".equalsIgnoreCase(method) ? "//" + head.second() : head.second()); // 请求 URI
+        String version = head.third(); // HTTP 版本
+        builder.method(method).uri(uri).version(version);
 
+        HttpHeaders headers = head.headers();
         builder.headers(headers); // 设置请求头
 
         // 读取请求体
-        if (headers.containsKey("Content-Length")) {
+        if (headers.contains("Content-Length")) {
             int contentLength = Integer.parseInt(headers.get("Content-Length"));
             byte[] body = parseHttpBodyFixed(clientIn, contentLength);
             builder.body(body);
@@ -67,76 +71,210 @@ public class HttpUtils {
     /**
      * 解析 HTTP 响应。
      *
+     * @param requestMethod 对应请求的方法，HEAD 请求的响应没有响应体
      * @param serverIn 服务器输入流
      * @return 解析后的 HttpResponse 对象
      * @throws IOException 如果发生 I/O 错误
      */
-    public static HttpResponse parseHttpResponse(InputStream serverIn) throws IOException {
-        HttpResponse.Builder builder = HttpResponse.newBuilder();
-        // 读取响应头
-        String httpHeader = parseHttpHeader(serverIn);
-        // 拆分头部字符串为各行
-        String[] lines = httpHeader.split("\r\n");
+    public static HttpResponse parseHttpResponse(String requestMethod, HttpInputStream serverIn) throws IOException {
+        return parseHttpResponseBody(requestMethod, parseHttpResponseHead(serverIn), serverIn);
+    }
 
-        // 第一行是状态行，格式如: HTTP/1.1 200 OK
-        String[] statusLineParts = lines[0].split(" ");
-        String version = statusLineParts[0]; // HTTP 版本
-        int statusCode = Integer.parseInt(statusLineParts[1]); // 状态码
-        HttpStatus status = HttpStatus.getStatusFromCode(statusCode);
+    /**
+     * 解析 HTTP 响应的状态行和头部，不读取响应体。
+     *
+     * @param serverIn 服务器输入流
+     * @return 解析后的 HttpResponse 对象，响应体为空
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public static HttpResponse parseHttpResponseHead(HttpInputStream serverIn) throws IOException {
+        HttpResponse.Builder builder = HttpResponse.newBuilder();
+        // 读取状态行与头部字段，状态行格式如: HTTP/1.1 200 OK
+        HttpHead head = serverIn.readHead();
+        if (head == null) {
+            throw new IOException("目标服务器在发送响应前关闭了连接");
+        }
+        String version = head.first(); // HTTP 版本
+        String code = head.second();
+        if (code == null || code.length() != 3 || !Character.isDigit(code.charAt(0))
+            || !Character.isDigit(code.charAt(1)) || !Character.isDigit(code.charAt(2))) {
+            // 状态行格式错误时按 I/O 错误处理，调用方会丢弃该连接
+            throw new IOException("目标服务器返回了无效的状态行: " + version + " " + code);
+        }
+        HttpStatus status = HttpStatus.getStatusFromCode(Integer.parseInt(code)); // 状态码
 
         builder.version(version); // 设置版本
         builder.statusCode(status); // 设置状态码
+        builder.headers(head.headers()); // 设置响应头
+        builder.body(new byte[0]);
+        return builder.build();
+    }
 
-        // 解析头部字段（从第 2 行开始）
-        Map<String, String> headers = new HashMap<>();
-        for (int i = 1; i < lines.length; i++) {
-            if (lines[i].isEmpty()) {
-                continue; // 跳过空行
+    /**
+     * 根据请求方法与响应头读取响应体。
+     *
+     * @param requestMethod 对应请求的方法，HEAD 请求的响应没有响应体
+     * @param head 已解析的响应头
+     * @param serverIn 服务器输入流
+     * @return 带有响应体的 HttpResponse 对象
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public static HttpResponse parseHttpResponseBody(String requestMethod, HttpResponse head,
+        HttpInputStream serverIn) throws IOException {
+        HttpHeaders headers = head.getHeaders();
+        HttpResponse.Builder builder = new HttpResponse.Builder(head).body(new byte[0]);
+        if (!hasBody(requestMethod, head)) {
+            log.debug("响应没有响应体，状态码: {}", head.getStatusCode());
+        } else if (headers.contains("Content-Length")) {
+            int contentLength = Integer.parseInt(headers.get("Content-Length"));
+            log.debug("使用固定长度解析响应体");
+            builder.body(parseHttpBodyFixed(serverIn, contentLength));
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            log.debug("使用分块传输解析响应体");
+            ChunkedDecoder decoder = new ChunkedDecoder();
+            builder.body(parseHttpBodyChunked(serverIn, decoder)).trailers(decoder.getTrailers());
+        } else {
+            log.debug("响应体以关闭连接作为结束，读取至流结束");
+            builder.body(serverIn.readAllBytes());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 以流式方式将响应体从目标服务器转发给客户端：数据到达后立即通过有界缓冲区写出，不在内存中缓存完整的响应体。
+     * 分块传输的响应保留目标服务器的分块边界原样转发。
+     *
+     * @param requestMethod 对应请求的方法，HEAD 请求的响应没有响应体
+     * @param head 已解析并已转发给客户端的响应头
+     * @param serverIn 服务器输入流
+     * @param clientOut 客户端输出流
+     * @param tee 同时接收解码后响应体的输出流（例如缓存写入器），可以为 null
+     * @throws IOException 如果发生 I/O 错误
+     */
+    public static void relayHttpBody(String requestMethod, HttpResponse head, HttpInputStream serverIn,
+        OutputStream clientOut, OutputStream tee) throws IOException {
+        HttpHeaders headers = head.getHeaders();
+        if (!hasBody(requestMethod, head)) {
+            log.debug("响应没有响应体，状态码: {}", head.getStatusCode());
+        } else if (headers.contains("Content-Length")) {
+            ByteBuffer buffer = RELAY_BUFFERS.acquire();
+            try {
+                relayBodyFixed(serverIn, clientOut, tee, Long.parseLong(headers.get("Content-Length")),
+                    buffer.array());
+            } finally {
+                RELAY_BUFFERS.release(buffer);
             }
-            // 每个头部字段是 key: value 格式
-            String[] headerParts = lines[i].split(": ", 2);
-            if (headerParts.length == 2) {
-                headers.put(headerParts[0], headerParts[1]);
+        } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            // 原样转发编码后的数据（保留目标服务器的块边界、块扩展与尾部字段），只向 tee 写出解码后的数据
+            serverIn.readChunked(new ChunkedDecoder(), clientOut, tee);
+        } else {
+            // 没有长度信息的响应体以目标服务器关闭连接作为结束，连接之后不能复用
+            ByteBuffer buffer = RELAY_BUFFERS.acquire();
+            try {
+                relayBodyUntilClose(serverIn, clientOut, tee, buffer.array());
+            } finally {
+                RELAY_BUFFERS.release(buffer);
             }
         }
+        clientOut.flush();
+    }
 
-        builder.headers(headers); // 设置响应头
+    /**
+     * 在两个套接字通道之间直接转发固定长度的响应体。数据经由直接缓冲区在内核与通道之间传递，不经过 Java 堆上的字节数组。
+     * <p>
+     * 阻塞模式的通道读取不受 SO_TIMEOUT 限制，因此读取期间将目标服务器通道切换为非阻塞模式：没有数据可读时才创建选择器等待，
+     * 超过 {@link ProxyConfig#UPSTREAM_READ_TIMEOUT_MILLIS} 仍没有数据则抛出 {@link SocketTimeoutException}。
+     * 返回前恢复阻塞模式，连接之后仍可以通过流读取。
+     *
+     * @param in 目标服务器通道
+     * @param out 客户端通道
+     * @param length 响应体长度
+     * @param buffer 直接缓冲区
+     * @throws IOException 如果发生 I/O 错误或读取超时
+     */
+    public static void spliceBody(SocketChannel in, SocketChannel out, long length, ByteBuffer buffer)
+        throws IOException {
+        Selector selector = null;
+        in.configureBlocking(false);
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear().limit((int)Math.min(buffer.capacity(), remaining)); // 不读取超出响应体的数据
+                int bytesRead = in.read(buffer);
+                if (bytesRead == -1) {
+                    throw new IOException("流已关闭，未能完全读取响应体");
+                }
+                if (bytesRead == 0) {
+                    if (selector == null) {
+                        selector = Selector.open();
+                        in.register(selector, SelectionKey.OP_READ);
+                    }
+                    if (selector.select(ProxyConfig.UPSTREAM_READ_TIMEOUT_MILLIS) == 0) {
+                        throw new SocketTimeoutException("等待目标服务器的响应体超时");
+                    }
+                    selector.selectedKeys().clear();
+                    continue;
+                }
+                remaining -= bytesRead;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+        } finally {
+            if (selector != null) {
+                selector.close(); // 关闭选择器会注销通道，之后才能恢复阻塞模式
+            }
+            if (in.isOpen()) {
+                in.configureBlocking(true);
+            }
+        }
+    }
 
-        // 读取响应体
-        byte[] body = new byte[0];
-        if (headers.containsKey("Content-Length")) {
-            int contentLength = Integer.parseInt(headers.get("Content-Length"));
-            System.out.println("[HttpUtils] 使用固定长度解析响应体");
-            body = parseHttpBodyFixed(serverIn, contentLength);
-        } else if (headers.containsKey("Transfer-Encoding") && headers.get("Transfer-Encoding").equals("chunked")) {
-            System.out.println("[HttpUtils] 使用分块传输解析响应体");
-            body = parseHttpBodyChunked(serverIn);
+    /**
+     * 流式转发以关闭连接作为结束的响应体，直到目标服务器关闭连接。
+     *
+     * @param in 输入流
+     * @param out 输出流
+     * @param tee 同时接收响应体的输出流，可以为 null
+     * @param buffer 中转缓冲区
+     * @throws IOException 如果发生 I/O 错误
+     */
+    private static void relayBodyUntilClose(InputStream in, OutputStream out, OutputStream tee, byte[] buffer)
+        throws IOException {
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+            if (tee != null) {
+                tee.write(buffer, 0, bytesRead);
+            }
         }
-        builder.body(body);
-        return builder.build();
     }
 
     /**
-     * 解析 HTTP 头部。
+     * 流式转发固定长度的响应体。
      *
      * @param in 输入流
-     * @return 解析后的头部字符串
+     * @param out 输出流
+     * @param tee 同时接收响应体的输出流，可以为 null
+     * @param length 响应体长度
+     * @param buffer 中转缓冲区
      * @throws IOException 如果发生 I/O 错误
      */
-    public static String parseHttpHeader(InputStream in) throws IOException {
-        StringBuilder headerBuilder = new StringBuilder();
-        int previous = -1, current;
-
-        // 逐字节读取，直到遇到连续的 \r\n\r\n 作为结束标志
-        while ((current = in.read()) != -1) {
-            headerBuilder.append((char)current);
-            // 检查是否遇到了 \r\n\r\n，表示头部结束
-            if (previous == '\r' && current == '\n' && headerBuilder.toString().endsWith("\r\n\r\n")) {
-                break;
+    private static void relayBodyFixed(InputStream in, OutputStream out, OutputStream tee, long length, byte[] buffer)
+        throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            int bytesRead = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+            if (bytesRead == -1) {
+                throw new IOException("流已关闭，未能完全读取响应体");
+            }
+            out.write(buffer, 0, bytesRead);
+            if (tee != null) {
+                tee.write(buffer, 0, bytesRead);
             }
-            previous = current;
+            remaining -= bytesRead;
         }
-        return headerBuilder.toString(); // 返回完整的头部字符串
     }
 
     /**
@@ -166,62 +304,17 @@ public class HttpUtils {
      * 解析分块传输的 HTTP 响应体。
      *
      * @param inputStream 输入流
-     * @return 解析后的响应体字节数组
-     * @throws IOException 如果发生 I/O 错误
+     * @param decoder 解码器，解析完成后其中保存尾部字段
+     * @return 解码后的响应体字节数组
+     * @throws IOException 如果发生 I/O 错误或数据格式错误
      */
-    private static byte[] parseHttpBodyChunked(InputStream inputStream) throws IOException {
+    private static byte[] parseHttpBodyChunked(HttpInputStream inputStream, ChunkedDecoder decoder)
+        throws IOException {
         ByteArrayOutputStream chunkedBody = new ByteArrayOutputStream();
-        while (true) {
-            // 读取块大小行
-            String chunkSizeLine = readLine(inputStream);
-            // 解析块大小
-            int chunkSize = Integer.parseInt(chunkSizeLine.trim(), 16); // 块大小为 16 进制
-            if (chunkSize == 0) {
-                break; // 读取到最后一个块，结束
-            }
-
-            // 读取该块的数据
-            byte[] chunk = new byte[chunkSize];
-            int bytesRead = inputStream.read(chunk, 0, chunkSize);
-            chunkedBody.write(chunk, 0, bytesRead);
-
-            // 读取块末尾的 \r\n
-            readLine(inputStream);
-        }
-        // 最后读取尾部的 \r\n（如果有）
-        readLine(inputStream);
-
+        inputStream.readChunked(decoder, null, chunkedBody);
         return chunkedBody.toByteArray();
     }
 
-    /**
-     * 从输入流中读取一行。
-     *
-     * @param in 输入流
-     * @return 读取的行字符串
-     * @throws IOException 如果发生 I/O 错误
-     */
-    private static String readLine(InputStream in) throws IOException {
-        StringBuilder lineBuilder = new StringBuilder();
-        int current;
-        while ((current = in.read()) != -1) {
-            if (current == '\r') {
-                int next = in.read();
-                if (next == '\n') {
-                    break; // 遇到 \r\n 则行结束
-                } else {
-                    lineBuilder.append((char)current);
-                    if (next != -1) {
-                        lineBuilder.append((char)next);
-                    }
-                }
-            } else {
-                lineBuilder.append((char)current);
-            }
-        }
-        return lineBuilder.toString();
-    }
-
     /**
      * 转发 HTTP 请求。
      *
@@ -236,11 +329,48 @@ public class HttpUtils {
 
         // 2. 转发请求体
         byte[] body = request.getBody();
-        if (request.getHeaders().containsKey("Content-Length")) { // 检查是否有 Content-Length 头部
+        if (request.getHeaders().contains("Content-Length")) { // 检查是否有 Content-Length 头部
             forwardBodyFixed(body, out);
         }
     }
 
+    /**
+     * 将 HTTP 请求编码为可以直接写入通道的缓冲区：请求头与请求体各一个缓冲区，通过聚集写一次写出，请求体不复制。
+     *
+     * @param request HTTP 请求对象
+     * @return 按顺序写出的缓冲区
+     */
+    public static ByteBuffer[] encodeHttpRequest(HttpRequest request) {
+        ByteBuffer head = ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] body = request.getBody();
+        if (body == null || body.length == 0 || !request.getHeaders().contains("Content-Length")) {
+            return new ByteBuffer[] {head};
+        }
+        return new ByteBuffer[] {head, ByteBuffer.wrap(body)};
+    }
+
+    /**
+     * 将 HTTP 响应编码为可以直接写入通道的缓冲区：响应头与响应体各一个缓冲区，响应体不复制；
+     * 分块传输的响应体需要重新编码，只有这种情况会复制。
+     *
+     * @param response HTTP 响应对象
+     * @return 按顺序写出的缓冲区
+     * @throws IOException 如果编码时发生 I/O 错误
+     */
+    public static ByteBuffer[] encodeHttpResponse(HttpResponse response) throws IOException {
+        ByteBuffer head = ByteBuffer.wrap(response.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] body = response.getBody();
+        if (body == null || body.length == 0) {
+            return new ByteBuffer[] {head};
+        }
+        if ("chunked".equalsIgnoreCase(response.getHeaders().get("Transfer-Encoding"))) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(body.length + 64);
+            forwardBodyChunked(body, response.getTrailers(), encoded);
+            return new ByteBuffer[] {head, ByteBuffer.wrap(encoded.toByteArray())};
+        }
+        return new ByteBuffer[] {head, ByteBuffer.wrap(body)};
+    }
+
     /**
      * 转发 HTTP 响应。
      *
@@ -258,46 +388,26 @@ public class HttpUtils {
         if (body != null && body.length > 0) {
             String transferEncoding = response.getHeaders().get("Transfer-Encoding");
             if ("chunked".equalsIgnoreCase(transferEncoding)) { // 检查是否为 chunked 传输编码
-                forwardBodyChunked(body, out);
-            } else if (response.getHeaders().containsKey("Content-Length")) { // 检查是否有 Content-Length 头部
+                forwardBodyChunked(body, response.getTrailers(), out);
+            } else { // 带有 Content-Length 头部，或以关闭连接作为结束
                 forwardBodyFixed(body, out);
             }
         }
     }
 
     /**
-     * 以分块传输方式转发响应体。
+     * 以分块传输方式转发响应体。完整的响应体已在内存中，较小的响应体与块大小行合并为一次写出，较大的响应体作为一个块写出，
+     * 不再拆分为多个小块。
      *
      * @param body 响应体字节数组
+     * @param trailers 尾部字段
      * @param out 输出流
      * @throws IOException 如果发生 I/O 错误
      */
-    private static void forwardBodyChunked(byte[] body, OutputStream out) throws IOException {
-        // 将响应体以 chunked 传输方式发送
-        int contentLength = body.length; // 响应体长度
-        int chunkSize = 1024; // 每个块的大小（可以调整）
-        int bytesWrittenTotal = 0; // 已经写入的字节数
-
-        while (bytesWrittenTotal < contentLength) {
-            // 计算当前写入块大小
-            int currentChunkSize = Math.min(chunkSize, contentLength - bytesWrittenTotal);
-            // 表示为 16 进制
-            String chunkSizeHex = Integer.toHexString(currentChunkSize) + "\r\n";
-
-            // 1. 写入块大小
-            out.write(chunkSizeHex.getBytes(StandardCharsets.UTF_8));
-            // 2. 写入块数据
-            out.write(body, bytesWrittenTotal, currentChunkSize);
-            // 3. 写入块末尾的 \r\n
-            out.write("\r\n".getBytes(StandardCharsets.UTF_8));
-            out.flush();
-
-            bytesWrittenTotal += currentChunkSize;
-        }
-
-        // 写入最后一个空块，表示结束
-        out.write("0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
-        out.flush();
+    private static void forwardBodyChunked(byte[] body, HttpHeaders trailers, OutputStream out) throws IOException {
+        ChunkedEncoder encoder = new ChunkedEncoder(out, RELAY_BUFFER_SIZE);
+        encoder.write(body);
+        encoder.finish(trailers);
     }
 
     /**
@@ -319,6 +429,22 @@ public class HttpUtils {
         }
     }
 
+    /**
+     * 创建代理自身生成的错误响应，响应体为状态码与原因短语的纯文本。
+     *
+     * @param status 状态码
+     * @return 错误响应
+     */
+    public static HttpResponse createErrorResponse(HttpStatus status) {
+        byte[] body = (status.getCode() + " " + status.getDescription() + "\r\n").getBytes(StandardCharsets.UTF_8);
+        return HttpResponse.newBuilder()
+            .statusCode(status)
+            .header("Content-Type", "text/plain; charset=utf-8")
+            .header("Content-Length", String.valueOf(body.length))
+            .body(body)
+            .build();
+    }
+
     /**
      * 连接到服务器。
      *
@@ -341,11 +467,126 @@ public class HttpUtils {
      * @throws IOException 如果发生 I/O 错误
      */
     public static Socket connectToServer(String host, int port, int timeout) throws IOException {
-        Socket socket = new Socket();
-        socket.connect(new InetSocketAddress(host, port), timeout);
+        // 使用带通道的套接字，以便转发响应体时可以在通道之间直接传输
+        Socket socket = SocketChannel.open().socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(ProxyConfig.UPSTREAM_READ_TIMEOUT_MILLIS); // 目标服务器长时间不发送数据时读取失败
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
         return socket;
     }
 
+    /**
+     * 判断客户端是否希望在本次请求之后保持连接。
+     *
+     * @param request HTTP 请求对象
+     * @return 如果客户端请求持久连接则返回 true
+     */
+    public static boolean isKeepAlive(HttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        if (headers.contains("Transfer-Encoding")) {
+            return false; // 无法确定请求体的边界，不能继续读取后续请求
+        }
+        String connection = headers.getOrDefault("Proxy-Connection", headers.get("Connection"));
+        if (HttpConstant.HTTP_DEFAULT_VERSION.equals(request.getVersion())) {
+            return !"close".equalsIgnoreCase(connection); // HTTP/1.1 默认保持连接
+        }
+        return "keep-alive".equalsIgnoreCase(connection); // HTTP/1.0 需要显式声明
+    }
+
+    /**
+     * 判断目标服务器在发送该响应之后是否仍会保持连接，可以被复用。
+     *
+     * @param requestMethod 对应请求的方法
+     * @param response HTTP 响应对象
+     * @return 如果连接可以复用则返回 true
+     */
+    public static boolean isKeepAlive(String requestMethod, HttpResponse response) {
+        if (!hasFramedBody(requestMethod, response)) {
+            return false; // 响应体以关闭连接作为结束
+        }
+        String connection = response.getHeaders().get("Connection");
+        if (HttpConstant.HTTP_DEFAULT_VERSION.equals(response.getVersion())) {
+            return !"close".equalsIgnoreCase(connection);
+        }
+        return "keep-alive".equalsIgnoreCase(connection);
+    }
+
+    /**
+     * 设置转发给目标服务器的请求的连接管理头部，移除客户端与代理之间的逐跳头部，并请求目标服务器保持连接。
+     *
+     * @param request HTTP 请求对象
+     * @return 更新后的 HTTP 请求对象
+     */
+    public static HttpRequest setUpstreamConnectionHeaders(HttpRequest request) {
+        return new HttpRequest.Builder(request).removeHeader("Proxy-Connection")
+            .removeHeader("Keep-Alive")
+            .header("Connection", "keep-alive")
+            .build();
+    }
+
+    /**
+     * 判断响应是否带有响应体（RFC 9112 第 6.3 节）：HEAD 请求的响应，以及 1xx、204、304 响应没有响应体，
+     * 即使带有 Content-Length 或 Transfer-Encoding 也不能读取，否则会一直等待不会到达的数据。
+     *
+     * @param requestMethod 对应请求的方法
+     * @param response HTTP 响应对象
+     * @return 如果响应带有响应体则返回 true
+     */
+    public static boolean hasBody(String requestMethod, HttpResponse response) {
+        int code = response.getStatusCode().getCode();
+        return !"HEAD".equals(requestMethod) && code / 100 != 1 && code != HttpStatus.NO_CONTENT.getCode()
+            && code != HttpStatus.NOT_MODIFIED.getCode();
+    }
+
+    /**
+     * 判断 GET 请求的响应是否带有明确的消息边界，只有这样客户端才能在同一连接上继续读取下一个响应。
+     *
+     * @param response HTTP 响应对象
+     * @return 如果响应体长度可以确定则返回 true
+     */
+    public static boolean hasFramedBody(HttpResponse response) {
+        return hasFramedBody(HttpConstant.GET, response);
+    }
+
+    /**
+     * 判断响应是否带有明确的消息边界，只有这样客户端才能在同一连接上继续读取下一个响应。
+     *
+     * @param requestMethod 对应请求的方法
+     * @param response HTTP 响应对象
+     * @return 如果响应体长度可以确定则返回 true
+     */
+    public static boolean hasFramedBody(String requestMethod, HttpResponse response) {
+        if (!hasBody(requestMethod, response)) {
+            return true; // 没有响应体
+        }
+        HttpHeaders headers = response.getHeaders();
+        return headers.contains("Content-Length") || "chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"));
+    }
+
+    /**
+     * 设置返回给客户端的响应的连接管理头部。
+     *
+     * @param response HTTP 响应对象
+     * @param keepAlive 是否保持连接
+     * @return 更新后的 HTTP 响应对象
+     */
+    public static HttpResponse setConnectionHeaders(HttpResponse response, boolean keepAlive) {
+        HttpResponse.Builder builder = new HttpResponse.Builder(response).removeHeader("Proxy-Connection");
+        if (keepAlive) {
+            builder.header("Connection", "keep-alive");
+            builder.header("Keep-Alive", String.format("timeout=%d, max=%d",
+                HttpConstant.DEFAULT_KEEP_ALIVE_TIMEOUT / 1000, HttpConstant.DEFAULT_KEEP_ALIVE_MAX_REQUESTS));
+        } else {
+            builder.header("Connection", "close");
+            builder.removeHeader("Keep-Alive");
+        }
+        return builder.build();
+    }
+
     /**
      * 添加 If-Modified-Since 头部到 HTTP 请求。
      *
@@ -1,5 +1,6 @@
 package cn.edu.hit.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -8,6 +9,11 @@ import java.security.NoSuchAlgorithmException;
  */
 public class StrUtils {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); // 十六进制字符表
+
+    // SHA-256 消息摘要原型：每次计算克隆一个实例，避免查找算法提供者；克隆开销与线程模型无关，虚拟线程下同样有效
+    private static final MessageDigest SHA_256 = newSha256();
+
     /**
      * 将字节数组转换为十六进制字符串。
      *
@@ -15,17 +21,29 @@ public class StrUtils {
      * @return 十六进制字符串
      */
     public static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            // 将每个字节转换为十六进制表示
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                // 如果十六进制字符串长度为 1，则在前面补 0
-                hexString.append('0');
-            }
-            hexString.append(hex);
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            // 每个字节的高 4 位和低 4 位分别对应一个十六进制字符
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
         }
-        return hexString.toString();
+        return new String(hex);
+    }
+
+    /**
+     * 计算字符串 UTF-8 编码的 SHA-256 哈希值。
+     *
+     * @param str 输入字符串
+     * @return 32 字节的哈希值
+     */
+    public static byte[] sha256(String str) {
+        MessageDigest digest;
+        try {
+            digest = (MessageDigest)SHA_256.clone();
+        } catch (CloneNotSupportedException e) {
+            digest = newSha256(); // 算法提供者不支持克隆时退回到创建新实例
+        }
+        return digest.digest(str.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -35,16 +53,20 @@ public class StrUtils {
      * @return 哈希值的十六进制字符串
      */
     public static String hashString(String str) {
+        return bytesToHex(sha256(str));
+    }
+
+    /**
+     * 创建 SHA-256 消息摘要实例。
+     *
+     * @return 消息摘要实例
+     */
+    private static MessageDigest newSha256() {
         try {
-            // 获取 SHA-256 消息摘要实例
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            // 计算哈希值
-            byte[] hash = digest.digest(str.getBytes());
-            // 将哈希值转换为十六进制字符串
-            return bytesToHex(hash);
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
-            // 如果没有找到 SHA-256 算法，抛出运行时异常
-            throw new RuntimeException(e);
+            // 每个 Java 平台都必须支持 SHA-256，不会发生
+            throw new IllegalStateException(e);
         }
     }
 }